@@ -0,0 +1,328 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Micro benchmarks for the hot paths of the engine, measured on a fixed corpus of positions. Every benchmark runs in a
+ * JVM of its own, is warmed up first and then measured in several timed iterations. Next to the time per operation it
+ * reports the bytes the benchmark thread has allocated per operation and per second, which is what the gc profiler of
+ * JMH shows.
+ * Run it with {@code java edu.kit.informatik.EngineBenchmark [name filter]}.
+ */
+final class EngineBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 400_000_000L;
+    private static final int BATCH = 256;
+    private static final int CORPUS_SIZE = 64;
+    private static final long CORPUS_SEED = 20170314L;
+    /**
+     * The first argument of a JVM that runs a single benchmark, followed by its name
+     */
+    private static final String FORKED = "--forked";
+    /**
+     * The largest board with six players, to compare move generation with the classic board
+     */
+    private static final BoardGeometry VARIANT = BoardGeometry.of(6, 60, 4);
+
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Everything a benchmark returns ends up here, so that the JIT cannot throw the work away.
+     */
+    private static long sink;
+
+    /**
+     * One operation of a benchmark
+     */
+    private interface Operation {
+        /**
+         * @param index how many operations ran before this one, to pick the input from the corpus
+         * @return anything that depends on the work done
+         */
+        long run(int index);
+    }
+
+    private final BoardState[] positions;
+    private final Game[] games;
+    private final Game[] variantGames;
+    private final String[] settings;
+    private final String[] invalidSettings = {
+        "not even close",
+        "SR,SR,SR;SB,SB,SB,SB;SG,SG,SG,SG;SY,SY,SY,SY",
+        "0,SR,SR,SR;0,SB,SB,SB;SG,SG,SG,SG;SY,SY,SY,SY",
+        "AR,BR,CR,DR;SB,SB,SB,SB;SG,SG,SG,SG;SY,SY,SY,SY",
+        "SR,SR,SR,SR;SB,SB,SB,SB;SG,SG,SG,SG;SY,SY,SY,40",
+    };
+    private final String[][] script;
+    private final String[] lines;
+    private final int[] moves = new int[Move.MAX_MOVES];
+
+    /**
+     * Builds the corpus, on the classic board and on {@link #VARIANT}.
+     */
+    private EngineBenchmark() {
+        positions = corpus(BoardGeometry.CLASSIC, moves);
+        variantGames = new Game[CORPUS_SIZE];
+        BoardState[] variantPositions = corpus(VARIANT, moves);
+        for (int i = 0; i < variantGames.length; i++) {
+            variantGames[i] = new Game(variantPositions[i]);
+        }
+        games = new Game[positions.length];
+        settings = new String[positions.length];
+        List<String[]> commands = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            games[i] = new Game(positions[i]);
+            String[] lines = games[i].toString().split("\n");
+            settings[i] = lines[0] + ";" + lines[1] + ";" + lines[2] + ";" + lines[3];
+
+            // the console session for this position: start it, roll until there is a move, make it, print, abort
+            Game copy = Game.withSettings(BoardGeometry.CLASSIC, settings[i]);
+            int roll = 0;
+            int count = 0;
+            while (count == 0 && roll < 6) {
+                count = MoveGenerator.generate(copy.getState(), ++roll, moves);
+            }
+            commands.add(new String[] {"start", settings[i]});
+            commands.add(new String[] {"roll", String.valueOf(roll)});
+            if (count > 0) {
+                commands.add(new String[] {"move", BoardGeometry.CLASSIC.getLabel(Move.getFrom(moves[0]),
+                        Game.getPlayerChar(0))});
+            }
+            commands.add(new String[] {"print", null});
+            commands.add(new String[] {"abort", null});
+        }
+        script = commands.toArray(new String[0][]);
+        lines = new String[script.length];
+        for (int i = 0; i < script.length; i++) {
+            lines[i] = script[i][1] == null ? script[i][0] : script[i][0] + " " + script[i][1];
+        }
+    }
+
+    /**
+     * Plays seeded random games and keeps every seventh position in which a player is about to roll the dice
+     * @param geometry the shape of the board
+     * @param moves room for the possible moves
+     * @return {@link #CORPUS_SIZE} positions
+     */
+    private static BoardState[] corpus(BoardGeometry geometry, int[] moves) {
+        SplittableRandom random = new SplittableRandom(CORPUS_SEED);
+        List<BoardState> corpus = new ArrayList<>();
+        Game game = new Game(geometry);
+        for (int rolls = 1; corpus.size() < CORPUS_SIZE; rolls++) {
+            if (game.hasEnded()) {
+                game = new Game(geometry);
+            }
+            int count = game.getMoves(random.nextInt(6) + 1, moves);
+            if (count > 0) {
+                game.executeMove(moves[random.nextInt(count)]);
+            }
+            if (rolls % 7 == 0 && !game.hasEnded()) {
+                corpus.add(new BoardState(game.getState()));
+            }
+        }
+        return corpus.toArray(new BoardState[0]);
+    }
+
+    /**
+     * Runs every benchmark in a JVM of its own, one after the other, the way JMH forks. In a single JVM, all
+     * benchmarks would share the call site in {@link #iterate(Operation, long[])} and the profiles of the engine's
+     * methods, so that what ran first would change how the JIT compiles everything after it.
+     * @param args optionally a part of the names of the benchmarks that are to be run
+     * @throws IOException if a JVM can't be started
+     * @throws InterruptedException if waiting for a JVM is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 1 && args[0].equals(FORKED)) {
+            EngineBenchmark bench = new EngineBenchmark();
+            bench.measure(args[1], bench.benchmarks().get(args[1]));
+            return;
+        }
+        String filter = args.length > 0 ? args[0] : "";
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(EngineBenchmark.class.getName());
+        command.add(FORKED);
+        Terminal.printLine(String.format(Locale.ROOT, "%-36s %12s %10s %14s %10s %10s", "benchmark", "ns/op", "error",
+                "ops/s", "B/op", "MB/s"));
+        for (String name : new EngineBenchmark().benchmarks().keySet()) {
+            if (!name.contains(filter)) {
+                continue;
+            }
+            command.add(name);
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            command.remove(command.size() - 1);
+            if (exitCode != 0) {
+                Terminal.printError("benchmark " + name + " failed with exit code " + exitCode);
+            }
+        }
+    }
+
+    /**
+     * Lists the benchmarks, in the order they are run
+     * @return every benchmark by its name
+     */
+    private Map<String, Operation> benchmarks() {
+        Map<String, Operation> benchmarks = new LinkedHashMap<>();
+        for (int roll = 1; roll <= 6; roll++) {
+            final int r = roll;
+            benchmarks.put("Game.getMoves roll=" + roll, i -> games[i % games.length].getMoves(r, moves));
+        }
+        for (int roll = 1; roll <= 6; roll++) {
+            final int r = roll;
+            benchmarks.put("Game.getMoves " + VARIANT + " roll=" + roll, i -> variantGames[i
+                    % variantGames.length].getMoves(r, moves));
+        }
+        benchmarks.put("new Game(position)", i -> new Game(positions[i % positions.length]).getTurn());
+        benchmarks.put("Game.executeMove incl. new Game", this::executeMove);
+        benchmarks.put("Game.makeMove + unmakeMove", this::makeAndUnmakeMove);
+        benchmarks.put("Game.parseSettings valid", i -> Game.parseSettings(BoardGeometry.CLASSIC,
+                settings[i % settings.length]).getTurn());
+        benchmarks.put("Game.parseSettings invalid", i -> Game.parseSettings(BoardGeometry.CLASSIC,
+                invalidSettings[i % invalidSettings.length]) == null ? 0 : 1);
+        SettingsParser parser = new SettingsParser(BoardGeometry.CLASSIC);
+        benchmarks.put("SettingsParser.parse uncached", i -> parser.parse(settings[i % settings.length]).getTurn());
+        benchmarks.put("Game.toString", i -> games[i % games.length].toString().length());
+        benchmarks.put("GameStateCodec.appendPrint", i -> GameStateCodec.appendPrint(games[i
+                % games.length].getState(), new StringBuilder(64)).length());
+        benchmarks.put("Player.toString", i -> games[(i >> 2) % games.length].getPlayer(i & 3).toString().length());
+        LatencyHistogram histogram = new LatencyHistogram("bench");
+        benchmarks.put("LatencyHistogram.record", i -> {
+            histogram.record(i & 0xFFFF);
+            return i;
+        });
+        benchmarks.put("LatencyHistogram.recordSince", i -> {
+            histogram.recordSince(System.nanoTime());
+            return i;
+        });
+        Controller controller = new Controller();
+        benchmarks.put("Controller command round trip", i -> command(controller, i));
+        benchmarks.put("CommandLexer.lex", i -> CommandLexer.lex(lines[i % lines.length]));
+        return benchmarks;
+    }
+
+    /**
+     * Rolls the dice in a fresh copy of a corpus position and makes the first possible move.
+     * @param index picks the position and the roll
+     * @return the player who is up afterwards
+     */
+    private long executeMove(int index) {
+        Game game = new Game(positions[index % positions.length]);
+        if (game.getMoves(index % 6 + 1, moves) == 0) {
+            return game.getTurn();
+        }
+        return game.executeMove(moves[0]);
+    }
+
+    /**
+     * Rolls the dice in a corpus game, makes the first possible move and takes both back, the way a search does.
+     * @param index picks the game and the roll
+     * @return the player who was up after the move
+     */
+    private long makeAndUnmakeMove(int index) {
+        Game game = games[index % games.length];
+        long beforeRoll = game.mark();
+        int turn = game.getTurn();
+        if (game.getMoves(index % 6 + 1, moves) > 0) {
+            long undo = game.makeMove(moves[0]);
+            turn = game.getTurn();
+            game.unmakeMove(undo);
+        }
+        game.unmakeMove(beforeRoll);
+        return turn;
+    }
+
+    /**
+     * Sends one command of the recorded console sessions through a controller, like the console would.
+     * @param controller the controller
+     * @param index which command of the script
+     * @return the length of the answer
+     */
+    private long command(Controller controller, int index) {
+        String[] command = script[index % script.length];
+        switch (command[0]) {
+            case "start":
+                return controller.startGame(command[1]).length();
+            case "roll":
+                return controller.rollTheDice(command[1]).length();
+            case "move":
+                return controller.timeToMotor(command[1]).length();
+            case "print":
+                return controller.toString().length();
+            default:
+                controller.resetGame();
+                return 0;
+        }
+    }
+
+    /**
+     * Warms a benchmark up, measures it and prints the results
+     * @param name the name of the benchmark
+     * @param operation the benchmark
+     */
+    private void measure(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(operation, new long[3]);
+        }
+        double[] nanosPerOp = new double[ITERATIONS];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long[] result = new long[3];
+            iterate(operation, result);
+            nanosPerOp[i] = (double) result[1] / result[0];
+            totalOps += result[0];
+            totalNanos += result[1];
+            totalBytes += result[2];
+        }
+
+        double mean = (double) totalNanos / totalOps;
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        // half the width of the 99.9% confidence interval (Student t, 4 degrees of freedom), like JMH reports it
+        double error = 8.610 * Math.sqrt(variance / (ITERATIONS - 1)) / Math.sqrt(ITERATIONS);
+        Terminal.printLine(String.format(Locale.ROOT, "%-36s %12.1f %10.1f %14.0f %10.1f %10.1f", name, mean, error,
+                totalOps * 1e9 / totalNanos, (double) totalBytes / totalOps,
+                totalBytes * 1e9 / totalNanos / (1 << 20)));
+    }
+
+    /**
+     * Runs a benchmark in batches until the iteration time is up
+     * @param operation the benchmark
+     * @param result receives the number of operations, the nanoseconds and the allocated bytes
+     */
+    private static void iterate(Operation operation, long[] result) {
+        long thread = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long now;
+        int index = 0;
+        long local = 0;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                local += operation.run(index++);
+            }
+            now = System.nanoTime();
+        } while (now - start < ITERATION_NANOS);
+        result[2] = THREADS.getThreadAllocatedBytes(thread) - bytes;
+        result[1] = now - start;
+        result[0] = index;
+        sink += local;
+    }
+}
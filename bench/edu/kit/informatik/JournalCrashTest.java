@@ -0,0 +1,104 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that a {@link Journal} can still be read and appended to after a crash that wrote a checkpoint but not the
+ * events before it. The crash is made by cutting the last events off the events file, so the checkpoints file ends
+ * with a checkpoint whose events are gone. The journal is then opened again, more turns are played, and the game
+ * replayed from the journal has to be the one that was played.
+ * Run it with {@code java edu.kit.informatik.JournalCrashTest}; it throws if the check fails.
+ */
+final class JournalCrashTest {
+
+    private static final String SESSION = "crash";
+    private static final int EVENTS_BEFORE_CRASH = Journal.CHECKPOINT_INTERVAL + 80;
+    private static final int LOST_EVENTS = 100;
+    private static final int TURNS_AFTER_CRASH = 20;
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private JournalCrashTest() {
+
+    }
+
+    /**
+     * Runs the check
+     * @param args not used
+     * @throws IOException if the journal can't be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("journal-crash");
+        SplittableRandom random = new SplittableRandom(7);
+        int[] moves = new int[Move.MAX_MOVES];
+
+        Game game = new Game();
+        try (Journal journal = Journal.open(directory, SESSION, Journal.Sync.NEVER)) {
+            journal.recordStart(game);
+            while (journal.getEventCount() < EVENTS_BEFORE_CRASH) {
+                game = playTurn(game, journal, random, moves);
+            }
+        }
+
+        // the checkpoint at CHECKPOINT_INTERVAL made it to the disk, the events that led up to it did not
+        Path events = directory.resolve(Journal.fileName(SESSION) + ".events");
+        try (FileChannel channel = FileChannel.open(events, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - LOST_EVENTS * Short.BYTES);
+        }
+
+        game = Journal.replay(directory, SESSION, Long.MAX_VALUE);
+        try (Journal journal = Journal.open(directory, SESSION, Journal.Sync.NEVER)) {
+            check(journal.getEventCount() == EVENTS_BEFORE_CRASH - LOST_EVENTS, "events after the crash");
+            for (int i = 0; i < TURNS_AFTER_CRASH; i++) {
+                game = playTurn(game, journal, random, moves);
+            }
+        }
+
+        Game replayed = Journal.replay(directory, SESSION, Long.MAX_VALUE);
+        check(replayed != null && replayed.toString().equals(game.toString()), "replayed game");
+        Terminal.printLine("journal survives a crash between checkpoint and events");
+    }
+
+    /**
+     * Rolls the dice, makes a random one of the possible moves and records both, starting a new game if the last one
+     * has ended
+     * @param game the game
+     * @param journal where the turn is recorded
+     * @param random where the rolls and the choices come from
+     * @param moves room for the possible moves
+     * @return the game that was played on
+     */
+    private static Game playTurn(Game game, Journal journal, SplittableRandom random, int[] moves) {
+        Game current = game;
+        if (current == null || current.hasEnded()) {
+            current = new Game();
+            journal.recordStart(current);
+        }
+        int roll = random.nextInt(6) + 1;
+        int count = current.getMoves(roll, moves);
+        journal.recordRoll(roll, current);
+        if (count > 0) {
+            int move = moves[random.nextInt(count)];
+            current.executeMove(move);
+            journal.recordMove(Move.getFrom(move), current);
+        }
+        return current;
+    }
+
+    /**
+     * Fails the check if a condition does not hold
+     * @param condition the condition
+     * @param what what was checked, for the message
+     */
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("wrong " + what);
+        }
+    }
+}
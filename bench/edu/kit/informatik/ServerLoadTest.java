@@ -0,0 +1,157 @@
+package edu.kit.informatik;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Puts load on a {@link GameServer} over loopback. It first opens a number of connections that stay idle for the whole
+ * run, then lets a number of clients play random games as fast as the server answers, and reports how many commands
+ * per second went through and how long the round trips took.
+ * Every command is followed by "sync", which the server answers with an error line, so a client always knows where an
+ * answer ends. Run it with {@code java edu.kit.informatik.ServerLoadTest [idle] [clients] [seconds] [port]}; without
+ * a port, a server is started in the same process.
+ */
+final class ServerLoadTest {
+
+    private static final String SYNC = "sync";
+    private static final String SYNC_ANSWER = "Error, command not recognized!";
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private ServerLoadTest() {
+
+    }
+
+    /**
+     * Runs the load test
+     * @param args how many idle connections, how many playing clients, how many seconds and which port
+     * @throws Exception if the server can't be reached
+     */
+    public static void main(String[] args) throws Exception {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        GameServer server = null;
+        int port;
+        if (args.length > 3) {
+            port = Integer.parseInt(args[3]);
+        } else {
+            int processors = Runtime.getRuntime().availableProcessors();
+            server = new GameServer(new Controller(), new InetSocketAddress("127.0.0.1", 0),
+                    Math.max(1, processors / 2), processors);
+            server.start();
+            port = server.getPort();
+        }
+
+        List<Socket> idleSockets = new ArrayList<>(idle);
+        long openStart = System.nanoTime();
+        for (int i = 0; i < idle; i++) {
+            idleSockets.add(new Socket("127.0.0.1", port));
+        }
+        Terminal.printLine(String.format(Locale.ROOT, "%d idle connections opened in %d ms", idle,
+                (System.nanoTime() - openStart) / 1_000_000));
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong commands = new AtomicLong();
+        long[][] latencies = new long[clients][];
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            threads[c] = new Thread(() -> latencies[client] = play(port, client, deadline, commands));
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        Terminal.printLine(String.format(Locale.ROOT, "%d commands by %d clients, %.0f commands/s", all.length,
+                clients, all.length / (double) seconds));
+        if (all.length > 0) {
+            Terminal.printLine(String.format(Locale.ROOT,
+                    "round trip us: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f", all[all.length / 2] / 1e3,
+                    all[(int) (all.length * 0.9)] / 1e3, all[(int) (all.length * 0.99)] / 1e3,
+                    all[(int) (all.length * 0.999)] / 1e3, all[all.length - 1] / 1e3));
+        }
+        if (server != null) {
+            Terminal.printLine("connections open at the server: " + server.getConnectionCount());
+        }
+
+        for (Socket socket : idleSockets) {
+            socket.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Plays random games over a single connection until the time is up
+     * @param port the server's port
+     * @param seed the seed of the dice
+     * @param deadline when to stop, as {@link System#nanoTime()}
+     * @param commands counts every command sent
+     * @return the round trip times in nanoseconds
+     */
+    private static long[] play(int port, long seed, long deadline, AtomicLong commands) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] latencies = new long[1 << 16];
+        int count = 0;
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            List<String> answer = new ArrayList<>();
+            boolean started = false;
+            while (System.nanoTime() < deadline) {
+                String command;
+                if (!started) {
+                    command = "start";
+                } else if (!answer.isEmpty() && answer.get(0).contains("-")) {
+                    command = "move " + answer.get(random.nextInt(answer.size() - 1)).split("-")[0];
+                } else {
+                    command = "roll " + (random.nextInt(6) + 1);
+                }
+
+                long start = System.nanoTime();
+                out.write((command + "\n" + SYNC + "\n").getBytes(StandardCharsets.UTF_8));
+                answer.clear();
+                for (String line; !(line = in.readLine()).equals(SYNC_ANSWER);) {
+                    answer.add(line);
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+                commands.incrementAndGet();
+
+                if (command.equals("start")) {
+                    started = answer.get(0).equals("OK");
+                } else if (!answer.isEmpty() && answer.get(answer.size() - 1).endsWith(" winner")) {
+                    started = false;
+                }
+                if (!started) {
+                    answer.clear();
+                    out.write("abort\n".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            out.write("quit\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+}
@@ -0,0 +1,133 @@
+package edu.kit.informatik;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Sends the events of the sessions to Java Flight Recorder. This source folder needs Java 11 or later, the rest of the
+ * program does not, which is why {@link GameEvents} only loads this class if it is there.
+ * Every event is created and checked with {@link Event#shouldCommit()} before any of its fields are filled in. While
+ * nothing is recorded, that check is a constant false and the event never leaves the stack, so it costs nothing.
+ * Record with {@code -XX:StartFlightRecording} and look for the category "Mensch Ärgere Dich Nicht".
+ */
+final class FlightRecorderEvents extends GameEvents {
+
+    /**
+     * Only asked whether turns are enabled, never committed
+     */
+    private static final TurnEvent TURN_PROBE = new TurnEvent();
+
+    /**
+     * A turn that is over
+     */
+    @Name("edu.kit.informatik.Turn")
+    @Label("Turn")
+    @Category("Mensch Ärgere Dich Nicht")
+    @Description("A dice roll and the move made after it")
+    static final class TurnEvent extends Event {
+        @Label("Session")
+        String session;
+        @Label("Player")
+        String player;
+        @Label("Roll")
+        int roll;
+        @Label("Legal Moves")
+        int legalMoves;
+        @Label("From")
+        @Description("Where the moved peg stood, empty if there was no move")
+        String from;
+        @Label("To")
+        @Description("Where the moved peg landed, empty if there was no move")
+        String to;
+        @Label("Capture")
+        @Description("Whether the move sent a peg of another player back home")
+        boolean capture;
+        @Label("Engine Time")
+        @Description("Time spent listing the moves and making one")
+        @Timespan(Timespan.NANOSECONDS)
+        long engineTime;
+    }
+
+    /**
+     * A game that has started
+     */
+    @Name("edu.kit.informatik.GameStart")
+    @Label("Game Start")
+    @Category("Mensch Ärgere Dich Nicht")
+    static final class GameStartEvent extends Event {
+        @Label("Session")
+        String session;
+        @Label("Board")
+        @Description("Players, path length and pegs")
+        String board;
+        @Label("Custom Settings")
+        boolean custom;
+    }
+
+    /**
+     * A game that is over, won or not
+     */
+    @Name("edu.kit.informatik.GameEnd")
+    @Label("Game End")
+    @Category("Mensch Ärgere Dich Nicht")
+    static final class GameEndEvent extends Event {
+        @Label("Session")
+        String session;
+        @Label("Winner")
+        @Description("The winner, empty if the game was ended before anyone won")
+        String winner;
+        @Label("Turns")
+        int turns;
+    }
+
+    @Override
+    boolean isTurnEnabled() {
+        return TURN_PROBE.isEnabled();
+    }
+
+    @Override
+    void turn(String session, BoardGeometry geometry, int player, int roll, int legalMoves, int move,
+            long nanos) {
+        TurnEvent event = new TurnEvent();
+        if (event.shouldCommit()) {
+            char playerChar = Game.getPlayerChar(player);
+            event.session = session;
+            event.player = Game.getPlayerName(player);
+            event.roll = roll;
+            event.legalMoves = legalMoves;
+            if (move != Move.NONE) {
+                event.from = geometry.getLabel(Move.getFrom(move), playerChar);
+                event.to = geometry.getLabel(Move.getTo(move), playerChar);
+                event.capture = Move.isCapture(move);
+            }
+            event.engineTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    void gameStarted(String session, BoardGeometry geometry, boolean custom) {
+        GameStartEvent event = new GameStartEvent();
+        if (event.shouldCommit()) {
+            event.session = session;
+            event.board = geometry.toString();
+            event.custom = custom;
+            event.commit();
+        }
+    }
+
+    @Override
+    void gameEnded(String session, int winner, int turns) {
+        GameEndEvent event = new GameEndEvent();
+        if (event.shouldCommit()) {
+            event.session = session;
+            event.winner = winner == -1 ? null : Game.getPlayerName(winner);
+            event.turns = turns;
+            event.commit();
+        }
+    }
+}
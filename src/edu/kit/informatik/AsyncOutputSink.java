@@ -0,0 +1,221 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A sink that hands its lines to a writer thread of its own, so that printing a line only puts it into a ring buffer
+ * and the game goes on while the terminal is still busy. The writer takes every line that has piled up at once,
+ * encodes all of them into one {@link EncodedOutputSink} and flushes the streams whenever the ring runs empty, so a
+ * burst of lines becomes one write and nothing is left sitting in a buffer while the game waits. Printing only waits
+ * if the ring is full. Since one writer writes the lines of both streams in the order they were printed, standard
+ * output and standard error stay in order.
+ * If writing fails, the writer stops, and the next line printed, {@link #flush()} or {@link #close()} throws the
+ * error. Lines that have not been written when the JVM shuts down are written by a shutdown hook.
+ */
+final class AsyncOutputSink implements OutputSink {
+
+    private final EncodedOutputSink sink;
+    private final String[] lines;
+    private final boolean[] toErr;
+    private final int mask;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition printed = lock.newCondition();
+    private final Condition taken = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread writer;
+    private final Thread shutdownHook;
+    /**
+     * How many lines have been printed, taken by the writer, and written out and flushed, guarded by the lock. The
+     * lines from taken up to printed are in the ring.
+     */
+    private long printedCount;
+    private long takenCount;
+    private long flushedCount;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Creates a sink and starts its writer
+     * @param sink what the writer writes the lines to, which is then only used by the writer
+     * @param capacity how many lines the ring holds, rounded up to a power of two
+     */
+    AsyncOutputSink(EncodedOutputSink sink, int capacity) {
+        this.sink = sink;
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        lines = new String[size];
+        toErr = new boolean[size];
+        mask = size - 1;
+        writer = new Thread(this::write, "output-sink-writer");
+        writer.setDaemon(true);
+        writer.start();
+        shutdownHook = new Thread(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                // the streams are gone, there is nobody left to tell
+            }
+        }, "output-sink-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public void printLine(String line) throws IOException {
+        put(false, line);
+    }
+
+    @Override
+    public void printErrorLine(String line) throws IOException {
+        put(true, line);
+    }
+
+    /**
+     * Puts a line into the ring, waiting for room if it is full
+     * @param error true if the line goes to standard error
+     * @param line the line, without the line separator
+     * @throws IOException if the writer has failed or the sink is closed
+     */
+    private void put(boolean error, String line) throws IOException {
+        lock.lock();
+        try {
+            while (printedCount - takenCount == lines.length && failure == null && !closed) {
+                taken.await();
+            }
+            check();
+            int slot = (int) printedCount & mask;
+            lines[slot] = line;
+            toErr[slot] = error;
+            printedCount++;
+            printed.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Throws the writer's error, or an error if the sink is closed. Must be called with the lock held.
+     * @throws IOException if the writer has failed or the sink is closed
+     */
+    private void check() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("the output sink is closed");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            check();
+            long target = printedCount;
+            while (flushedCount < target && failure == null) {
+                flushed.await();
+            }
+            check();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            printed.signal();
+            taken.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (IllegalStateException e) {
+            // the JVM is already shutting down, the hook is what is closing the sink
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * What the writer does: takes all lines that are in the ring, writes them, and flushes once the ring is empty,
+     * until the sink is closed and every line has been written
+     */
+    private void write() {
+        while (true) {
+            long from;
+            long to;
+            lock.lock();
+            try {
+                while (printedCount == takenCount && !closed) {
+                    printed.awaitUninterruptibly();
+                }
+                if (printedCount == takenCount) {
+                    return;
+                }
+                from = takenCount;
+                to = printedCount;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                // the lines up to printedCount have been put in with the lock held, and stay until takenCount moves
+                for (long i = from; i < to; i++) {
+                    int slot = (int) i & mask;
+                    sink.append(toErr[slot], lines[slot]);
+                    lines[slot] = null;
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                takenCount = to;
+                taken.signalAll();
+                if (error == null && printedCount == to) {
+                    lock.unlock();
+                    try {
+                        sink.flush();
+                    } catch (IOException e) {
+                        error = e;
+                    } finally {
+                        lock.lock();
+                    }
+                    flushedCount = to;
+                    flushed.signalAll();
+                }
+                if (error != null) {
+                    failure = error;
+                    taken.signalAll();
+                    flushed.signalAll();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
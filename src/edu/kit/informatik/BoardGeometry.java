@@ -0,0 +1,353 @@
+package edu.kit.informatik;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The shape of a board: how many players take part, how many squares the track has and how many pegs each player
+ * has, which is also the size of every end area. The players' start squares are spread evenly over the track.
+ * Everything that only depends on the shape is worked out once, when a geometry is first asked for, and shared by
+ * every game on a board of that shape, most of all the table of where a peg ends up for each player, location and
+ * roll. That makes generating a move a single table lookup on any board.
+ * Geometries are canonical: {@link #of(int, int, int)} always gives the same instance for the same shape, so they can
+ * be compared with ==.
+ * A player's pegs and end area must fit into the bits of a single long (see {@link BoardState}), so the track and the
+ * end area together have at most 64 locations.
+ */
+final class BoardGeometry {
+
+    /**
+     * The fewest players a game can have
+     */
+    static final int MIN_PLAYERS = 2;
+    /**
+     * The most players a game can have, one for each name in {@link Game#getPlayerName(int)}
+     */
+    static final int MAX_PLAYERS = 6;
+    /**
+     * The most pegs a player can have
+     */
+    static final int MAX_PEGS = 8;
+
+    /**
+     * Rolls go from 1 to 6, the table uses 8 entries per location so that a shift finds them
+     */
+    private static final int ROLL_SHIFT = 3;
+
+    private static final ConcurrentHashMap<Integer, BoardGeometry> GEOMETRIES = new ConcurrentHashMap<>();
+
+    /**
+     * The classic board: four players, 40 squares and four pegs each
+     */
+    static final BoardGeometry CLASSIC = of(4, 40, 4);
+
+    private final int players;
+    private final int pathLength;
+    private final int pegs;
+    private final int locations;
+    private final long trackMask;
+    private final int fullEndArea;
+    private final long hashKey;
+    private final int[] startIndices;
+    /**
+     * The move a peg makes for every player, location and roll, encoded without the capture flag. {@link Move#NONE}
+     * where the peg would overshoot the end area.
+     */
+    private final int[] moves;
+    /**
+     * The launch move of every player, encoded without the capture flag
+     */
+    private final int[] launches;
+
+    /**
+     * Works out everything about a board of the given shape
+     * @param players how many players take part
+     * @param pathLength how many squares the track has
+     * @param pegs how many pegs each player has
+     */
+    private BoardGeometry(int players, int pathLength, int pegs) {
+        this.players = players;
+        this.pathLength = pathLength;
+        this.pegs = pegs;
+        locations = pathLength + pegs;
+        trackMask = (1L << pathLength) - 1;
+        fullEndArea = (1 << pegs) - 1;
+        hashKey = Zobrist.geometry(players, pathLength, pegs);
+        startIndices = new int[players];
+        moves = new int[players * locations << ROLL_SHIFT];
+        launches = new int[players];
+
+        for (int player = 0; player < players; player++) {
+            startIndices[player] = player * (pathLength / players);
+            int endSpot = getEndIndex(player);
+            launches[player] = Move.encode(Peg.HOME, startIndices[player], Move.LAUNCH, false);
+
+            for (int location = 0; location < locations; location++) {
+                for (int roll = 1; roll <= 6; roll++) {
+                    int move = Move.NONE;
+                    if (hasArrived(location)) {
+                        int spot = getEndSpot(location) + roll;
+                        if (spot < pegs) {
+                            move = Move.encode(location, inEndArea(spot), Move.END_AREA, false);
+                        }
+                    } else {
+                        // how many steps the peg can take before it has to turn into the end area
+                        int distance = (endSpot - location + pathLength) % pathLength;
+                        if (roll <= distance) {
+                            move = Move.encode(location, (location + roll) % pathLength, Move.TRACK, false);
+                        } else if (roll - distance - 1 < pegs) {
+                            move = Move.encode(location, inEndArea(roll - distance - 1), Move.ENTER, false);
+                        }
+                    }
+                    moves[(player * locations + location) << ROLL_SHIFT | roll] = move;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the geometry of a board of the given shape. The track has to have the same number of squares between any
+     * two neighbouring start squares, at least two of them.
+     * @param players how many players take part, from {@link #MIN_PLAYERS} to {@link #MAX_PLAYERS}
+     * @param pathLength how many squares the track has
+     * @param pegs how many pegs each player has, from 1 to {@link #MAX_PEGS}
+     * @return the geometry, null if there can be no such board
+     */
+    static BoardGeometry of(int players, int pathLength, int pegs) {
+        if (players < MIN_PLAYERS || players > MAX_PLAYERS || pegs < 1 || pegs > MAX_PEGS
+                || pathLength < 2 * players || pathLength % players != 0 || pathLength + pegs > Long.SIZE) {
+            return null;
+        }
+        Integer key = (players * Long.SIZE + pathLength) * (MAX_PEGS + 1) + pegs;
+        BoardGeometry geometry = GEOMETRIES.get(key);
+        return geometry != null ? geometry
+                : GEOMETRIES.computeIfAbsent(key, k -> new BoardGeometry(players, pathLength, pegs));
+    }
+
+    /**
+     * Reads the shape of a board the way {@link #toString()} writes it: the number of players, the path length and
+     * the number of pegs, separated by ','
+     * @param text the shape as given by the user
+     * @return the geometry, null if the text does not describe a possible board
+     */
+    static BoardGeometry parse(String text) {
+        int[] numbers = new int[3];
+        int count = 0;
+        int digits = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ',';
+            if (c == ',') {
+                if (digits == 0 || count == numbers.length) {
+                    return null;
+                }
+                count++;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 2) {
+                numbers[count] = numbers[count] * 10 + (c - '0');
+                digits++;
+            } else {
+                return null;
+            }
+        }
+        return count == numbers.length ? of(numbers[0], numbers[1], numbers[2]) : null;
+    }
+
+    /**
+     * @return how many players take part
+     */
+    int getPlayers() {
+        return players;
+    }
+
+    /**
+     * @return how many squares the track has, which is also the location code of the first spot of an end area
+     */
+    int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * @return how many pegs each player has
+     */
+    int getPegs() {
+        return pegs;
+    }
+
+    /**
+     * @return how many location codes there are besides {@link Peg#HOME}: the squares and the spots of an end area
+     */
+    int getLocations() {
+        return locations;
+    }
+
+    /**
+     * @return a bit mask of every square of the track
+     */
+    long getTrackMask() {
+        return trackMask;
+    }
+
+    /**
+     * @return the bit mask of an end area in which every spot is taken
+     */
+    int getFullEndArea() {
+        return fullEndArea;
+    }
+
+    /**
+     * @return the Zobrist key of the shape, part of the hash of every board of this shape
+     */
+    long getHashKey() {
+        return hashKey;
+    }
+
+    /**
+     * @param player the player's id
+     * @return the square where the player's pegs land when they are launched
+     */
+    int getStartIndex(int player) {
+        return startIndices[player];
+    }
+
+    /**
+     * @param player the player's id
+     * @return the square where the track ends and the end area begins for the player
+     */
+    int getEndIndex(int player) {
+        return (player * (pathLength / players) + pathLength - 1) % pathLength;
+    }
+
+    /**
+     * Looks up the move a peg makes
+     * @param player the id of the player who owns the peg
+     * @param location the location code of the peg, not {@link Peg#HOME}
+     * @param roll the dice roll, from 1 to 6
+     * @return the encoded move without the capture flag, {@link Move#NONE} if the peg would overshoot its end area
+     */
+    int getMove(int player, int location, int roll) {
+        return moves[(player * locations + location) << ROLL_SHIFT | roll];
+    }
+
+    /**
+     * @param player the player's id
+     * @return the move that launches a peg of the player, encoded without the capture flag
+     */
+    int getLaunch(int player) {
+        return launches[player];
+    }
+
+    /**
+     * Tells how far a peg has come
+     * @param player the id of the player who owns the peg
+     * @param location the location code of the peg
+     * @return how many steps the peg has taken since it was launched, -1 if it is at home
+     */
+    int getProgress(int player, int location) {
+        if (Peg.isHome(location)) {
+            return -1;
+        } else if (hasArrived(location)) {
+            return location;
+        }
+        return (location - startIndices[player] + pathLength) % pathLength;
+    }
+
+    /**
+     * Moves every square of a mask forward around the track
+     * @param squares a bit mask of track squares
+     * @param steps how many squares forward, from 1 to one less than the path length
+     * @return the moved mask
+     */
+    long rotate(long squares, int steps) {
+        return (squares << steps | squares >>> (pathLength - steps)) & trackMask;
+    }
+
+    /**
+     * Returns the location code of a spot in the end area
+     * @param spot the spot in the end area, starting from 0
+     * @return the location code
+     */
+    int inEndArea(int spot) {
+        return pathLength + spot;
+    }
+
+    /**
+     * Has the peg made it into the player's end area?
+     * @param location the location code of the peg
+     * @return true if it has, false if not
+     */
+    boolean hasArrived(int location) {
+        return location >= pathLength;
+    }
+
+    /**
+     * Returns the spot in the end area of a peg that has arrived
+     * @param location the location code of the peg
+     * @return the spot in the end area, starting from 0
+     */
+    int getEndSpot(int location) {
+        return location - pathLength;
+    }
+
+    /**
+     * Returns how a location is written down for the user: "S" and the player's letter for home, the square's number
+     * for the gameBoard and the spot's letter followed by the player's letter for the end area.
+     * @param location the location code
+     * @param playerChar the letter of the player who owns the peg
+     * @return the location as it is shown to the user
+     */
+    String getLabel(int location, char playerChar) {
+        return appendLabel(location, playerChar, new StringBuilder(3)).toString();
+    }
+
+    /**
+     * Writes a location the way {@link #getLabel(int, char)} returns it
+     * @param location the location code
+     * @param playerChar the letter of the player who owns the peg
+     * @param out where the text goes
+     * @return the builder, for chaining
+     */
+    StringBuilder appendLabel(int location, char playerChar, StringBuilder out) {
+        if (Peg.isHome(location)) {
+            return out.append('S').append(playerChar);
+        } else if (hasArrived(location)) {
+            return out.append((char) ('A' + getEndSpot(location))).append(playerChar);
+        }
+        return out.append(location);
+    }
+
+    /**
+     * Reads a location the way {@link #getLabel(int, char)} writes it. Square numbers must not have leading zeros.
+     * @param label the location as given by the user, packed by {@link CommandLexer#readLabel(CharSequence, int, int)}
+     * @param playerChar the letter of the player who owns the peg
+     * @return the location code, {@link Peg#NOWHERE} if the label does not describe a location of that player
+     */
+    int parseLabel(int label, char playerChar) {
+        char first = (char) (label & 0xFF);
+        char second = (char) (label >>> 8 & 0xFF);
+        if (second == playerChar) {
+            if (first == 'S') {
+                return Peg.HOME;
+            } else if (first >= 'A' && first < 'A' + pegs) {
+                return inEndArea(first - 'A');
+            }
+        }
+        if (first < '0' || first > '9') {
+            return Peg.NOWHERE;
+        }
+        int square = first - '0';
+        if (second != 0) {
+            if (second < '0' || second > '9' || first == '0') {
+                return Peg.NOWHERE;
+            }
+            square = square * 10 + (second - '0');
+        }
+        return square < pathLength ? square : Peg.NOWHERE;
+    }
+
+    /**
+     * @return the shape the way the board command takes it: players, path length and pegs, separated by ','
+     */
+    @Override
+    public String toString() {
+        return players + "," + pathLength + "," + pegs;
+    }
+}
@@ -0,0 +1,224 @@
+package edu.kit.informatik;
+
+/**
+ * The complete state of a running game, packed into a handful of primitives so that a board costs a few dozen bytes
+ * instead of a graph of small objects. Each player owns a single {@code long}: its lower
+ * {@link BoardGeometry#getPathLength()} bits mark the track squares that player's pegs are standing on, the bits right
+ * above that mark the occupied spots in the player's end area. Pegs that show up in neither are at home, so there is
+ * no need to store them at all. The index of a bit is the location code described in {@link Peg}.
+ * The shape of the board is given by its {@link BoardGeometry}, which the state only points to.
+ * Every change to the board also updates its Zobrist hash (see {@link Zobrist}), which covers the pegs, the player
+ * who is up and whether that player gets to roll again after a 6.
+ */
+final class BoardState {
+
+    private final BoardGeometry geometry;
+    private final long trackMask;
+    private final long[] pegs;
+    private int turn;
+    private int roll;
+    private boolean extraRoll;
+    private long hash;
+
+    /**
+     * Creates an empty board where every peg of every player is at home and the first player is up.
+     * @param geometry the shape of the board
+     */
+    BoardState(BoardGeometry geometry) {
+        this.geometry = geometry;
+        trackMask = geometry.getTrackMask();
+        pegs = new long[geometry.getPlayers()];
+        hash = geometry.getHashKey() ^ Zobrist.turn(0);
+    }
+
+    /**
+     * Copy constructor. The new state shares nothing with the original one.
+     * @param other the state to be copied
+     */
+    BoardState(BoardState other) {
+        geometry = other.geometry;
+        trackMask = other.trackMask;
+        pegs = other.pegs.clone();
+        turn = other.turn;
+        roll = other.roll;
+        extraRoll = other.extraRoll;
+        hash = other.hash;
+    }
+
+    /**
+     * @return the shape of the board
+     */
+    BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return how many players are on the board
+     */
+    int getNumberOfPlayers() {
+        return pegs.length;
+    }
+
+    /**
+     * Returns every location of the given player's pegs, track and end area together.
+     * @param player the player's id
+     * @return a bit mask where every set bit is a location code of one of the player's pegs
+     */
+    long getPegs(int player) {
+        return pegs[player];
+    }
+
+    /**
+     * @param player the player's id
+     * @return a bit mask of the track squares the player's pegs are standing on
+     */
+    long getTrack(int player) {
+        return pegs[player] & trackMask;
+    }
+
+    /**
+     * @param player the player's id
+     * @return a bit mask of the occupied spots in the player's end area, the lowest bit being the first spot
+     */
+    int getEndArea(int player) {
+        return (int) (pegs[player] >>> geometry.getPathLength());
+    }
+
+    /**
+     * @param player the player's id
+     * @return how many of the player's pegs are at home, waiting to be launched
+     */
+    int getHomeCount(int player) {
+        return geometry.getPegs() - Long.bitCount(pegs[player]);
+    }
+
+    /**
+     * Checks if the given player has a peg at the given location
+     * @param player the player's id
+     * @param location a location code that is not {@link Peg#HOME}
+     * @return true if there is one, false if not
+     */
+    boolean isAt(int player, int location) {
+        return (pegs[player] & (1L << location)) != 0;
+    }
+
+    /**
+     * @return a bit mask of all track squares that anyone's pegs are standing on
+     */
+    long getOccupiedSquares() {
+        long occupied = 0;
+        for (long playerPegs : pegs) {
+            occupied |= playerPegs;
+        }
+        return occupied & trackMask;
+    }
+
+    /**
+     * Finds out whose peg is standing on a track square
+     * @param square the track square
+     * @return the id of the owner, or -1 if the square is free
+     */
+    int getOccupant(int square) {
+        long bit = 1L << square;
+        for (int i = 0; i < pegs.length; i++) {
+            if ((pegs[i] & bit) != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Puts one of the player's pegs on a location
+     * @param player the player's id
+     * @param location a location code that is not {@link Peg#HOME}
+     */
+    void place(int player, int location) {
+        long bit = 1L << location;
+        if ((pegs[player] & bit) == 0) {
+            pegs[player] |= bit;
+            hash ^= Zobrist.peg(player, location);
+        }
+    }
+
+    /**
+     * Takes one of the player's pegs off a location. If it's not put anywhere else afterwards, it is home.
+     * @param player the player's id
+     * @param location a location code that is not {@link Peg#HOME}
+     */
+    void remove(int player, int location) {
+        long bit = 1L << location;
+        if ((pegs[player] & bit) != 0) {
+            pegs[player] &= ~bit;
+            hash ^= Zobrist.peg(player, location);
+        }
+    }
+
+    /**
+     * @return the id of the player who is up
+     */
+    int getTurn() {
+        return turn;
+    }
+
+    /**
+     * @param turn the id of the player who is up next
+     */
+    void setTurn(int turn) {
+        hash ^= Zobrist.turn(this.turn) ^ Zobrist.turn(turn);
+        this.turn = turn;
+    }
+
+    /**
+     * @return true if the player who is up rolled a 6 last time and gets to roll again
+     */
+    boolean hasExtraRoll() {
+        return extraRoll;
+    }
+
+    /**
+     * @param extraRoll whether the player who is up gets to roll again after a 6
+     */
+    void setExtraRoll(boolean extraRoll) {
+        if (this.extraRoll != extraRoll) {
+            hash ^= Zobrist.extraRoll();
+            this.extraRoll = extraRoll;
+        }
+    }
+
+    /**
+     * @return the Zobrist hash of the board
+     */
+    long getHash() {
+        return hash;
+    }
+
+    /**
+     * Works the Zobrist hash out from scratch instead of updating it with every change. Meant for checking that the
+     * updates are right.
+     * @return the Zobrist hash of the board
+     */
+    long computeHash() {
+        long fresh = geometry.getHashKey() ^ Zobrist.turn(turn) ^ (extraRoll ? Zobrist.extraRoll() : 0);
+        for (int i = 0; i < pegs.length; i++) {
+            for (long bits = pegs[i]; bits != 0; bits &= bits - 1) {
+                fresh ^= Zobrist.peg(i, Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * @return the last dice roll that produced at least one possible move
+     */
+    int getRoll() {
+        return roll;
+    }
+
+    /**
+     * @param roll the new dice roll
+     */
+    void setRoll(int roll) {
+        this.roll = roll;
+    }
+}
@@ -0,0 +1,161 @@
+package edu.kit.informatik;
+
+import java.util.Locale;
+
+/**
+ * Reads a line of input the way the console has always read it, without regular expressions and without creating any
+ * objects. A line that has a space in it is split at its first whitespace character into the command and the
+ * argument, which may be empty. A line without a space is all command and has no argument, even if it has tabs in it.
+ * What comes out is a token packed into a single long, just like {@link Move} packs a move into an int: the lowest
+ * byte holds the {@link Command}, the next 24 bits where the argument starts, and the upper 32 bits the argument read
+ * as a primitive value, for the commands that take one:
+ * - roll: the number the dice showed, -1 if the argument is not a number from 1 to 6
+ * - move: the position of the peg as a label (see {@link #readLabel(CharSequence, int, int)}), -1 if it isn't one
+ */
+final class CommandLexer {
+
+    /**
+     * Every command the console knows
+     */
+    enum Command {
+        START, ROLL, MOVE, SUGGEST, AUTOMOVE, BOARD, PERFT, STATS, PRINT, ABORT, QUIT, TEST,
+        /**
+         * Anything else
+         */
+        UNKNOWN;
+
+        /**
+         * How the command is typed
+         */
+        private final String keyword = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Stands for a line that has no argument, or for an argument that is not a valid value
+     */
+    static final int NONE = -1;
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final int START_SHIFT = 8;
+    private static final int START_MASK = (1 << 24) - 1;
+    private static final int VALUE_SHIFT = 32;
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private CommandLexer() {
+
+    }
+
+    /**
+     * Reads a line
+     * @param line the line as the user typed it
+     * @return the token
+     */
+    static long lex(String line) {
+        int end = line.length();
+        int start = NONE;
+        if (line.indexOf(' ') >= 0) {
+            end = 0;
+            while (!isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            start = end + 1;
+        }
+
+        Command command = Command.UNKNOWN;
+        for (Command candidate : COMMANDS) {
+            if (candidate.keyword.length() == end && line.regionMatches(0, candidate.keyword, 0, end)) {
+                command = candidate;
+                break;
+            }
+        }
+        int value = 0;
+        if (start != NONE && command == Command.ROLL) {
+            value = readRoll(line, start, line.length());
+        } else if (start != NONE && command == Command.MOVE) {
+            value = readLabel(line, start, line.length());
+        }
+        return command.ordinal() | (long) (start & START_MASK) << START_SHIFT | (long) value << VALUE_SHIFT;
+    }
+
+    /**
+     * @param token the token of a line
+     * @return the command of the line
+     */
+    static Command getCommand(long token) {
+        return COMMANDS[(int) token & 0xFF];
+    }
+
+    /**
+     * @param token the token of a line
+     * @return true if the line has an argument, which may be empty
+     */
+    static boolean hasArgument(long token) {
+        return (token >>> START_SHIFT & START_MASK) != START_MASK;
+    }
+
+    /**
+     * Gives the argument of a line as text
+     * @param line the line
+     * @param token the token of the line
+     * @return the argument, null if the line has none
+     */
+    static String getArgument(String line, long token) {
+        return hasArgument(token) ? line.substring((int) (token >>> START_SHIFT & START_MASK)) : null;
+    }
+
+    /**
+     * @param token the token of a line
+     * @return the argument read as a primitive value, see {@link CommandLexer}
+     */
+    static int getValue(long token) {
+        return (int) (token >>> VALUE_SHIFT);
+    }
+
+    /**
+     * Reads a dice roll, which is a single digit from 1 to 6
+     * @param text the text the roll is in
+     * @param from where the roll starts
+     * @param to where the roll ends
+     * @return the roll, {@link #NONE} if it is not one
+     */
+    static int readRoll(CharSequence text, int from, int to) {
+        if (to - from != 1 || text.charAt(from) < '1' || text.charAt(from) > '6') {
+            return NONE;
+        }
+        return text.charAt(from) - '0';
+    }
+
+    /**
+     * Reads what has the rough shape of a position, which is one or two letters, digits or underscores. Whether it is
+     * a position at all is up to {@link BoardGeometry#parseLabel(int, char)}. The label packs the characters into an
+     * int, the first one in the lowest byte, the second one, if there is one, in the byte above.
+     * @param text the text the position is in
+     * @param from where the position starts
+     * @param to where the position ends
+     * @return the label, {@link #NONE} if the text does not have that shape
+     */
+    static int readLabel(CharSequence text, int from, int to) {
+        if (to <= from || to - from > 2) {
+            return NONE;
+        }
+        int label = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+                return NONE;
+            }
+            label |= c << 8 * (i - from);
+        }
+        return label;
+    }
+
+    /**
+     * @param c a character
+     * @return true if it is one of the whitespace characters a regular expression means by \s
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,71 @@
+package edu.kit.informatik;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * How long the commands take, one {@link LatencyHistogram} per entry point of the {@link Controller} and one for the
+ * whole dispatch of a line in {@link Main}. The histograms are shared by every controller in the process, just like the
+ * platform MBean server they are shown in, under {@value #DOMAIN}:type=CommandLatency.
+ */
+final class CommandStats {
+
+    static final LatencyHistogram START = new LatencyHistogram("start");
+    static final LatencyHistogram ROLL = new LatencyHistogram("roll");
+    static final LatencyHistogram MOVE = new LatencyHistogram("move");
+    static final LatencyHistogram PRINT = new LatencyHistogram("print");
+    static final LatencyHistogram RESET = new LatencyHistogram("reset");
+    static final LatencyHistogram SUGGEST = new LatencyHistogram("suggest");
+    static final LatencyHistogram AUTOMOVE = new LatencyHistogram("automove");
+    static final LatencyHistogram PERFT = new LatencyHistogram("perft");
+    static final LatencyHistogram DISPATCH = new LatencyHistogram("dispatch");
+
+    private static final LatencyHistogram[] ALL = {START, ROLL, MOVE, PRINT, RESET, SUGGEST, AUTOMOVE, PERFT,
+        DISPATCH};
+    private static final String DOMAIN = "edu.kit.informatik";
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private CommandStats() {
+
+    }
+
+    /**
+     * Shows every histogram in the platform MBean server. Histograms that are already there are left alone.
+     * @throws JMException if the MBean server refuses one of them
+     */
+    static void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (LatencyHistogram histogram : ALL) {
+            try {
+                server.registerMBean(histogram, new ObjectName(DOMAIN + ":type=CommandLatency,name="
+                        + histogram.getName()));
+            } catch (InstanceAlreadyExistsException e) {
+                // registered by an earlier call
+            }
+        }
+    }
+
+    /**
+     * Shows how long the commands took so far, one line per command, in microseconds
+     * @return the lines
+     */
+    static String report() {
+        StringBuilder out = new StringBuilder();
+        for (LatencyHistogram histogram : ALL) {
+            if (out.length() > 0) {
+                out.append('\n');
+            }
+            out.append(String.format(Locale.ROOT,
+                    "%s: %d calls, mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                    histogram.getName(), histogram.getCount(), histogram.getMean() / 1e3, histogram.getP50() / 1e3,
+                    histogram.getP99() / 1e3, histogram.getP999() / 1e3, histogram.getMax() / 1e3));
+        }
+        return out.toString();
+    }
+}
@@ -2,19 +2,34 @@ package edu.kit.informatik;
 
 /**
  * As the name suggests, the controller class for the game. Manages the interaction between the game logic and the
- * program interface, in addition to doing more low-level operations like starting or ending the game
+ * program interface, in addition to doing more low-level operations like starting or ending the game. Every command
+ * is routed to a {@link GameSession} by its session id, so that one controller can run any number of games at once.
+ * The methods without a session id use a default session, which is the one the console plays in.
  * @author Emre Senliyim
  * @version 1.0
  */
 public class Controller {
 
-    private Game game;
+    /**
+     * The session the methods without a session id play in
+     */
+    static final String DEFAULT_SESSION = "default";
+
+    private final SessionRegistry sessions;
 
     /**
      * Empty controller because the game does not need to start until the controller is instructed to do so.
      */
     public Controller() {
+        this(new SessionRegistry());
+    }
 
+    /**
+     * Creates a controller that plays in the sessions of an existing registry
+     * @param sessions the registry that holds the sessions
+     */
+    Controller(SessionRegistry sessions) {
+        this.sessions = sessions;
     }
 
     /**
@@ -23,16 +38,7 @@ public class Controller {
      * @return "OK" if the game has been started, error message if there already is one in progress
      */
     public String startGame() {
-        if (game == null) {
-            game = Game.getInstance();
-            return "OK";
-        } else if (game.hasEnded()) {
-            Game.resetGame();
-            game = Game.getInstance();
-            return "OK";
-        } else {
-            return "Error, there already is a game in progress!";
-        }
+        return startGame(DEFAULT_SESSION, null);
     }
 
     /**
@@ -41,24 +47,46 @@ public class Controller {
      * @return "OK" if a new game has been started, relevant error messages in case something's wrong
      */
     public String startGame(String settings) {
-        if (game == null) {
-            game = Game.getInstance(settings);
-            if (game == null) {
-                return "Error, invalid start settings!";
-            }
-            return "OK";
-        } else if (game.hasEnded()) {
-            Game.resetGame();
-            game = Game.getInstance(settings);
-            if (game == null) {
-                return "Error, invalid start settings!";
-            }
-            return "OK";
-        } else {
-            return "Error, there already is a game in progress!";
+        return startGame(DEFAULT_SESSION, settings);
+    }
+
+    /**
+     * Starts a new game in the given session.
+     * @param sessionId the id of the session
+     * @param settings The custom settings as specified by the user, null for the default settings
+     * @return "OK" if a new game has been started, relevant error messages in case something's wrong
+     */
+    public String startGame(String sessionId, String settings) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.get(sessionId);
+            return settings == null ? session.startGame() : session.startGame(settings);
+        } finally {
+            CommandStats.START.recordSince(start);
         }
     }
 
+    /**
+     * Sets the shape of the board the next games are started on, or shows it.
+     * @param board the number of players, the path length and the number of pegs, separated by ',', null to show the
+     *              current shape
+     * @return "OK" if the board has been set, the current shape if none was given, error message otherwise
+     */
+    public String setBoard(String board) {
+        return setBoard(DEFAULT_SESSION, board);
+    }
+
+    /**
+     * Sets the shape of the board the next games in the given session are started on, or shows it.
+     * @param sessionId the id of the session
+     * @param board the number of players, the path length and the number of pegs, separated by ',', null to show the
+     *              current shape
+     * @return "OK" if the board has been set, the current shape if none was given, error message otherwise
+     */
+    public String setBoard(String sessionId, String board) {
+        return sessions.get(sessionId).setBoard(board);
+    }
+
     /**
      * Rolls the dice. The user gives the result of the dice roll instead of having it randomly generated in code.
      * The method then calls another method that calculates and lists all the possible moves that can be made following
@@ -68,44 +96,215 @@ public class Controller {
      * legal moves followed by an indicator that shows who's up. Returns an error message otherwise
      */
     public String rollTheDice(String diceRoll) {
-        if (game == null) {
-            return "Error, there is no game in progress!";
-        } else if (!diceRoll.matches("[1-6]")) {
-            return "Error, invalid dice roll!";
-        } else if (game.hasEnded()) {
-            return "Error, the game has ended!";
+        return rollTheDice(DEFAULT_SESSION, diceRoll);
+    }
+
+    /**
+     * Rolls the dice in the given session.
+     * @param sessionId the id of the session
+     * @param diceRoll what the user says the dice roll yielded
+     * @return the list of all possible legal moves followed by who's up, or an error message
+     */
+    public String rollTheDice(String sessionId, String diceRoll) {
+        return rollTheDice(sessionId, CommandLexer.readRoll(diceRoll, 0, diceRoll.length()));
+    }
+
+    /**
+     * Rolls the dice in the given session, with the roll already read by the {@link CommandLexer}.
+     * @param sessionId the id of the session
+     * @param roll what the user says the dice roll yielded, {@link CommandLexer#NONE} if it is not a valid roll
+     * @return the list of all possible legal moves followed by who's up, or an error message
+     */
+    String rollTheDice(String sessionId, int roll) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.find(sessionId);
+            if (session == null) {
+                return "Error, there is no game in progress!";
+            }
+            return session.rollTheDice(roll);
+        } finally {
+            CommandStats.ROLL.recordSince(start);
         }
-        return game.getMoves(Integer.valueOf(diceRoll));
     }
 
     /**
      * Tells the game to reset itself.
      */
     public void resetGame() {
-        Game.resetGame();
-        game = null;
+        long start = System.nanoTime();
+        sessions.get(DEFAULT_SESSION).resetGame();
+        CommandStats.RESET.recordSince(start);
+    }
+
+    /**
+     * Ends the given session along with the game in progress in it.
+     * @param sessionId the id of the session
+     */
+    public void resetGame(String sessionId) {
+        long start = System.nanoTime();
+        sessions.remove(sessionId);
+        CommandStats.RESET.recordSince(start);
     }
 
     @Override
     public String toString() {
-        if (game == null) {
-            return "Error, there is no game in progress!";
+        return toString(DEFAULT_SESSION);
+    }
+
+    /**
+     * Shows where every piece in the given session is.
+     * @param sessionId the id of the session
+     * @return the positions of all pieces followed by who's up, or an error message
+     */
+    public String toString(String sessionId) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.find(sessionId);
+            if (session == null) {
+                return "Error, there is no game in progress!";
+            }
+            return session.toString();
+        } finally {
+            CommandStats.PRINT.recordSince(start);
         }
-        return game.toString();
     }
 
     /**
      * Tells the game to execute a move that the user chose, if there is an unfinished game in progress
      * @param choice user's move choice
-     * @return whatever the executeTheMove returns. Could be an error message or a confirmation.
+     * @return error message if the choice is invalid, where the peg has landed and who's up next otherwise
      */
     public String timeToMotor(String choice) {
-        if (game == null) {
-            return "Error, there is no game in progress!";
-        } else if (game.hasEnded()) {
-            return "Error, the game has ended!";
+        return timeToMotor(DEFAULT_SESSION, choice);
+    }
+
+    /**
+     * Executes a move in the given session.
+     * @param sessionId the id of the session
+     * @param choice user's move choice
+     * @return error message if the choice is invalid, where the peg has landed and who's up next otherwise
+     */
+    public String timeToMotor(String sessionId, String choice) {
+        return timeToMotor(sessionId, CommandLexer.readLabel(choice, 0, choice.length()));
+    }
+
+    /**
+     * Executes a move in the given session, with the choice already read by the {@link CommandLexer}.
+     * @param sessionId the id of the session
+     * @param label the position of the peg to be moved, {@link CommandLexer#NONE} if it does not have the shape of one
+     * @return error message if the choice is invalid, where the peg has landed and who's up next otherwise
+     */
+    String timeToMotor(String sessionId, int label) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.find(sessionId);
+            if (session == null) {
+                return "Error, there is no game in progress!";
+            }
+            return session.timeToMotor(label);
+        } finally {
+            CommandStats.MOVE.recordSince(start);
+        }
+    }
+
+    /**
+     * Searches for the best move after a dice roll without making it
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return the move followed by how deep the search went and how fast it was, or an error message
+     */
+    public String suggestMove(String budget) {
+        return suggestMove(DEFAULT_SESSION, budget);
+    }
+
+    /**
+     * Searches for the best move after a dice roll in the given session without making it
+     * @param sessionId the id of the session
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return the move followed by how deep the search went and how fast it was, or an error message
+     */
+    public String suggestMove(String sessionId, String budget) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.find(sessionId);
+            if (session == null) {
+                return "Error, there is no game in progress!";
+            }
+            return session.suggestMove(budget);
+        } finally {
+            CommandStats.SUGGEST.recordSince(start);
+        }
+    }
+
+    /**
+     * Searches for the best move after a dice roll and makes it
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return where the peg has landed and who's up next, or an error message
+     */
+    public String autoMove(String budget) {
+        return autoMove(DEFAULT_SESSION, budget);
+    }
+
+    /**
+     * Searches for the best move after a dice roll in the given session and makes it
+     * @param sessionId the id of the session
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return where the peg has landed and who's up next, or an error message
+     */
+    public String autoMove(String sessionId, String budget) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.find(sessionId);
+            if (session == null) {
+                return "Error, there is no game in progress!";
+            }
+            return session.autoMove(budget);
+        } finally {
+            CommandStats.AUTOMOVE.recordSince(start);
+        }
+    }
+
+    /**
+     * Counts every way the game can go on for a number of dice rolls
+     * @param depth how many dice rolls to count
+     * @return the counts by kind of move and how fast they were made, or an error message
+     */
+    public String perft(String depth) {
+        return perft(DEFAULT_SESSION, depth);
+    }
+
+    /**
+     * Counts every way the game in the given session can go on for a number of dice rolls
+     * @param sessionId the id of the session
+     * @param depth how many dice rolls to count
+     * @return the counts by kind of move and how fast they were made, or an error message
+     */
+    public String perft(String sessionId, String depth) {
+        long start = System.nanoTime();
+        try {
+            GameSession session = sessions.find(sessionId);
+            if (session == null) {
+                return "Error, there is no game in progress!";
+            }
+            return session.perft(depth);
+        } finally {
+            CommandStats.PERFT.recordSince(start);
         }
-        return game.executeTheMove(choice);
+    }
+
+    /**
+     * Shows how long every command has taken so far, see {@link CommandStats}
+     * @return one line per command with how often it ran and its percentiles in microseconds
+     */
+    public String getStats() {
+        return CommandStats.report();
+    }
+
+    /**
+     * @return the registry that holds the sessions of this controller
+     */
+    SessionRegistry getSessions() {
+        return sessions;
     }
 
     /*TODO
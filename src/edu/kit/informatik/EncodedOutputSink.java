@@ -0,0 +1,125 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A sink that encodes every line straight into a byte buffer and writes the buffer out when it is full, when it is
+ * flushed, or when the next line is meant for the other stream. The console's output is almost all ASCII, which for
+ * the usual charsets is one byte for each character, so those characters are copied over one by one without an
+ * encoder; the rest of a line after the first other character is left to the charset.
+ * A sink is not safe to use from more than one thread at a time.
+ */
+final class EncodedOutputSink implements OutputSink {
+
+    private final OutputStream out;
+    private final OutputStream err;
+    private final Charset charset;
+    private final boolean asciiBytes;
+    private final byte[] lineSeparator;
+    private final byte[] buffer;
+    private int length;
+    /**
+     * True if the bytes in the buffer are meant for standard error
+     */
+    private boolean toErr;
+
+    /**
+     * Creates a sink
+     * @param out where standard output goes
+     * @param err where standard error goes
+     * @param charset the charset the lines are encoded in
+     * @param capacity how many bytes are collected before they are written out
+     */
+    EncodedOutputSink(OutputStream out, OutputStream err, Charset charset, int capacity) {
+        this.out = out;
+        this.err = err;
+        this.charset = charset;
+        asciiBytes = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+        lineSeparator = System.lineSeparator().getBytes(charset);
+        buffer = new byte[Math.max(capacity, 1)];
+    }
+
+    @Override
+    public void printLine(String line) throws IOException {
+        append(false, line);
+    }
+
+    @Override
+    public void printErrorLine(String line) throws IOException {
+        append(true, line);
+    }
+
+    /**
+     * Encodes a line into the buffer
+     * @param error true if the line goes to standard error
+     * @param line the line, without the line separator
+     * @throws IOException if writing out what was in the buffer has failed
+     */
+    void append(boolean error, String line) throws IOException {
+        if (error != toErr) {
+            // what came before has to be out before the other stream gets anything
+            flush();
+            toErr = error;
+        }
+        int i = 0;
+        if (asciiBytes) {
+            for (int end = line.length(); i < end; i++) {
+                char c = line.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                if (length == buffer.length) {
+                    drain();
+                }
+                buffer[length++] = (byte) c;
+            }
+        }
+        if (i < line.length()) {
+            append(line.substring(i).getBytes(charset));
+        }
+        append(lineSeparator);
+    }
+
+    /**
+     * Copies bytes into the buffer, writing the buffer out whenever it is full
+     * @param bytes the bytes
+     * @throws IOException if writing has failed
+     */
+    private void append(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length;) {
+            if (length == buffer.length) {
+                drain();
+            }
+            int chunk = Math.min(bytes.length - offset, buffer.length - length);
+            System.arraycopy(bytes, offset, buffer, length, chunk);
+            length += chunk;
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Writes the buffer to its stream, without flushing the stream
+     * @throws IOException if writing has failed
+     */
+    private void drain() throws IOException {
+        if (length > 0) {
+            (toErr ? err : out).write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        (toErr ? err : out).flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
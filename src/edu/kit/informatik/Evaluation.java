@@ -0,0 +1,193 @@
+package edu.kit.informatik;
+
+/**
+ * Judges how good a position is for a player, for the search behind {@link Expectimax}. A player's score is made of
+ * three parts, each with its own weight:
+ * - progress: how far the player's pegs have come, counted in squares from home to the last spot of the end area
+ * - safety: how many of the player's pegs on the gameBoard an opponent could hit with a single roll, counted negative
+ * - captures: how many opponent pegs the player could hit with a single roll
+ * The value of a position is the player's score minus the best score among the opponents, or a fixed value beyond
+ * any score once somebody has won.
+ * With a {@link Tablebase}, races on the {@link BoardGeometry#CLASSIC} board are judged by the table instead: once no
+ * peg can land on or be landed on by another player's peg ever again, the expected number of turns each player still
+ * needs is exact, and the value is the difference to the fastest opponent, counted in squares.
+ */
+final class Evaluation {
+
+    /**
+     * The evaluation the console's move suggestions use
+     */
+    static final Evaluation DEFAULT = new Evaluation(1.0f, 6.0f, 3.0f);
+
+    /**
+     * The value of a position that has been won. Lost positions are the negative of it.
+     */
+    static final float WIN = 1.0e6f;
+    /**
+     * How many squares a turn is worth in a race: 3.5 for the average roll, and a 6 rolls again
+     */
+    private static final float SQUARES_PER_TURN = 4.2f;
+
+    private final float progressWeight;
+    private final float safetyWeight;
+    private final float captureWeight;
+    private final Tablebase tablebase;
+
+    /**
+     * Creates an evaluation without a tablebase
+     * @param progressWeight how much a square of progress counts
+     * @param safetyWeight how much a peg that can be hit counts against the player
+     * @param captureWeight how much an opponent peg that can be hit counts for the player
+     */
+    Evaluation(float progressWeight, float safetyWeight, float captureWeight) {
+        this(progressWeight, safetyWeight, captureWeight, null);
+    }
+
+    /**
+     * Creates an evaluation
+     * @param progressWeight how much a square of progress counts
+     * @param safetyWeight how much a peg that can be hit counts against the player
+     * @param captureWeight how much an opponent peg that can be hit counts for the player
+     * @param tablebase judges races on the classic board, null to judge them like any other position
+     */
+    Evaluation(float progressWeight, float safetyWeight, float captureWeight, Tablebase tablebase) {
+        this.progressWeight = progressWeight;
+        this.safetyWeight = safetyWeight;
+        this.captureWeight = captureWeight;
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Creates an evaluation with the same weights that judges races by a tablebase
+     * @param table the tablebase, null for none
+     * @return the evaluation
+     */
+    Evaluation withTablebase(Tablebase table) {
+        return new Evaluation(progressWeight, safetyWeight, captureWeight, table);
+    }
+
+    /**
+     * Judges a position
+     * @param state the board
+     * @param player whose point of view the position is judged from
+     * @return the value of the position, positive if it is good for the player
+     */
+    float evaluate(BoardState state, int player) {
+        if (tablebase != null && isRace(state)) {
+            float value = race(state, player);
+            if (!Float.isNaN(value)) {
+                return value;
+            }
+        }
+        int fullEndArea = state.getGeometry().getFullEndArea();
+        long occupied = state.getOccupiedSquares();
+        float own = 0;
+        float bestOther = -Float.MAX_VALUE;
+        for (int i = 0; i < state.getNumberOfPlayers(); i++) {
+            if (state.getEndArea(i) == fullEndArea) {
+                return i == player ? WIN : -WIN;
+            }
+            float score = score(state, i, occupied);
+            if (i == player) {
+                own = score;
+            } else if (score > bestOther) {
+                bestOther = score;
+            }
+        }
+        return own - bestOther;
+    }
+
+    /**
+     * Works out the score of a single player
+     * @param state the board
+     * @param player the player's id
+     * @param occupied every occupied square of the gameBoard
+     * @return the score
+     */
+    private float score(BoardState state, int player, long occupied) {
+        BoardGeometry geometry = state.getGeometry();
+        int pathLength = geometry.getPathLength();
+        int start = geometry.getStartIndex(player);
+        long track = state.getTrack(player);
+        long others = occupied & ~track;
+
+        int progress = 0;
+        for (long pegs = track; pegs != 0; pegs &= pegs - 1) {
+            progress += (Long.numberOfTrailingZeros(pegs) - start + pathLength) % pathLength + 1;
+        }
+        for (int endArea = state.getEndArea(player); endArea != 0; endArea &= endArea - 1) {
+            progress += pathLength + 1 + Integer.numberOfTrailingZeros(endArea);
+        }
+
+        // squares that are at most one roll ahead of somebody's pegs
+        long ownReach = 0;
+        long otherReach = 0;
+        for (int roll = 1; roll <= 6; roll++) {
+            ownReach |= geometry.rotate(track, roll);
+            otherReach |= geometry.rotate(others, roll);
+        }
+        int inDanger = Long.bitCount(track & otherReach);
+        int targets = Long.bitCount(others & ownReach);
+        return progressWeight * progress - safetyWeight * inDanger + captureWeight * targets;
+    }
+
+    /**
+     * Judges a race by the tablebase
+     * @param state the board, a race on the classic board
+     * @param player whose point of view the position is judged from
+     * @return the value of the position, NaN if some player can't finish on their own
+     */
+    private float race(BoardState state, int player) {
+        int fullEndArea = state.getGeometry().getFullEndArea();
+        float own = 0;
+        float fastestOther = Float.MAX_VALUE;
+        for (int i = 0; i < state.getNumberOfPlayers(); i++) {
+            if (state.getEndArea(i) == fullEndArea) {
+                return i == player ? WIN : -WIN;
+            }
+            float turns = tablebase.getExpectedTurns(state, i);
+            if (Float.isInfinite(turns)) {
+                return Float.NaN;
+            }
+            if (i == player) {
+                own = turns;
+            } else if (turns < fastestOther) {
+                fastestOther = turns;
+            }
+        }
+        return progressWeight * SQUARES_PER_TURN * (fastestOther - own);
+    }
+
+    /**
+     * Checks whether a position is a race the tablebase knows the answer to: a classic board, no pegs at home that
+     * could still be launched, and no peg of another player anywhere on the squares a player's pegs still have to
+     * cross. Since pegs only ever move forward, nobody can ever hit anybody again after that.
+     * @param state the board
+     * @return true if it is such a race
+     */
+    static boolean isRace(BoardState state) {
+        BoardGeometry geometry = state.getGeometry();
+        if (geometry != BoardGeometry.CLASSIC) {
+            return false;
+        }
+        int pathLength = geometry.getPathLength();
+        long occupied = state.getOccupiedSquares();
+        for (int i = 0; i < state.getNumberOfPlayers(); i++) {
+            if (state.getHomeCount(i) > 0) {
+                return false;
+            }
+            long track = state.getTrack(i);
+            if (track == 0) {
+                continue;
+            }
+            // counted from the player's start square, the squares still ahead are those from the last peg on
+            int start = geometry.getStartIndex(i);
+            long own = start == 0 ? track : geometry.rotate(track, pathLength - start);
+            long others = start == 0 ? occupied & ~track : geometry.rotate(occupied & ~track, pathLength - start);
+            if ((others & -(own & -own)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
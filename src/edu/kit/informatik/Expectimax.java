@@ -0,0 +1,213 @@
+package edu.kit.informatik;
+
+/**
+ * Finds the best move for the player who is up by looking ahead over all dice rolls. Where the dice decides, the
+ * value of a position is the average over the six rolls. Where a player decides, the player who asked for the move
+ * picks the best move for themselves and every opponent is assumed to pick the worst one for that player. Positions
+ * at the end of the look-ahead are judged by an {@link Evaluation}.
+ * The search deepens one roll at a time until its time is up and then goes with the best move of the deepest look-ahead
+ * it has finished. Values of positions are kept in a {@link TranspositionTable} so that they are only worked out once.
+ * A searcher is meant to be used by one thread at a time.
+ */
+final class Expectimax {
+
+    /**
+     * The time is checked whenever the number of visited positions is a multiple of this plus one, and at every
+     * position once the deadline is close
+     */
+    private static final int CHECK_INTERVAL = 255;
+    /**
+     * The search stops after this share of its time, in tenths, so that the positions visited since the last check and
+     * getting back out of the look-ahead still fit into the rest
+     */
+    private static final int DEADLINE_TENTHS = 9;
+    private static final int MAX_DEPTH = 32;
+    private static final int SHARED_TABLE_MEGABYTES = 32;
+
+    private static Evaluation defaultEvaluation = Evaluation.DEFAULT;
+    private static TranspositionTable sharedTable;
+
+    private final Evaluation evaluation;
+    private final TranspositionTable table;
+    private final int[][] moves = new int[MAX_DEPTH + 2][Move.MAX_MOVES];
+
+    private int root;
+    private long rootKey;
+    private long deadline;
+    /**
+     * From this time on, the time is checked at every position
+     */
+    private long closeToDeadline;
+    private int checkMask;
+    private boolean aborted;
+    private long nodes;
+    private int depth;
+    private long nanos;
+
+    /**
+     * Creates a searcher
+     * @param evaluation judges the positions at the end of the look-ahead
+     * @param table where the values of positions are kept. Only searchers that use the same evaluation may share a
+     *              table.
+     */
+    Expectimax(Evaluation evaluation, TranspositionTable table) {
+        this.evaluation = evaluation;
+        this.table = table;
+    }
+
+    /**
+     * Lets the searchers of {@link #withDefaults()} judge races by a tablebase from now on
+     * @param tablebase the tablebase, null for none
+     */
+    static synchronized void useTablebase(Tablebase tablebase) {
+        defaultEvaluation = Evaluation.DEFAULT.withTablebase(tablebase);
+        // the values in the shared table were worked out by the old evaluation
+        sharedTable = null;
+    }
+
+    /**
+     * Creates a searcher that uses the default evaluation and a table shared by all such searchers
+     * @return the searcher
+     */
+    static Expectimax withDefaults() {
+        synchronized (Expectimax.class) {
+            if (sharedTable == null) {
+                sharedTable = new TranspositionTable(SHARED_TABLE_MEGABYTES);
+            }
+            return new Expectimax(defaultEvaluation, sharedTable);
+        }
+    }
+
+    /**
+     * Picks one of the possible moves of a game whose dice has just been rolled. The game itself is left untouched.
+     * @param game the game
+     * @param budgetMillis how long the search may take, in milliseconds
+     * @return the best move found, {@link Move#NONE} if the game is not waiting for a move
+     */
+    int search(Game game, long budgetMillis) {
+        long start = System.nanoTime();
+        long budget = budgetMillis * 1_000_000L;
+        deadline = start + budget / 10 * DEADLINE_TENTHS;
+        closeToDeadline = deadline - budget / 10;
+        checkMask = CHECK_INTERVAL;
+        aborted = false;
+        nodes = 0;
+        depth = 0;
+        root = game.getTurn();
+        rootKey = Long.rotateLeft(Zobrist.turn(root), 17);
+        table.newSearch();
+
+        int[] rootMoves = moves[MAX_DEPTH + 1];
+        int count = game.getPossibleMoves(rootMoves);
+        int best = count == 0 ? Move.NONE : rootMoves[0];
+        // the one copy of the search, every move below is made on it and taken back again
+        Game copy = new Game(game);
+
+        for (int ply = 0; ply <= MAX_DEPTH && count > 1; ply++) {
+            int bestAtPly = Move.NONE;
+            float bestValue = -Float.MAX_VALUE;
+            for (int i = 0; i < count && !aborted; i++) {
+                long undo = copy.makeMove(rootMoves[i]);
+                float value = chance(copy, ply);
+                copy.unmakeMove(undo);
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestAtPly = rootMoves[i];
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            best = bestAtPly;
+            depth = ply;
+            // a look-ahead one roll deeper takes many times as long as this one, no point in starting it
+            if (Math.abs(bestValue) >= Evaluation.WIN || System.nanoTime() - start > (deadline - start) / 8) {
+                break;
+            }
+        }
+        nanos = System.nanoTime() - start;
+        return best;
+    }
+
+    /**
+     * Works out the value of a position in which the dice is about to be rolled
+     * @param game the game, which is changed while looking ahead but left as it was
+     * @param remaining how many more rolls to look ahead
+     * @return the value of the position for the player who asked for the move
+     */
+    private float chance(Game game, int remaining) {
+        if ((++nodes & checkMask) == 0) {
+            long now = System.nanoTime();
+            if (now > deadline) {
+                aborted = true;
+            } else if (now > closeToDeadline) {
+                checkMask = 0;
+            }
+        }
+        BoardState state = game.getState();
+        if (aborted || remaining == 0 || game.hasEnded()) {
+            return evaluation.evaluate(state, root);
+        }
+
+        long key = state.getHash() ^ rootKey;
+        long entry = table.probe(key);
+        if (entry != TranspositionTable.MISS && TranspositionTable.getDepth(entry) >= remaining) {
+            return TranspositionTable.getValue(entry);
+        }
+
+        int[] rolled = moves[remaining];
+        long beforeRoll = game.mark();
+        float sum = 0;
+        for (int roll = 1; roll <= 6 && !aborted; roll++) {
+            int count = game.getMoves(roll, rolled);
+            if (count == 0) {
+                sum += chance(game, remaining - 1);
+                game.unmakeMove(beforeRoll);
+                continue;
+            }
+            boolean maximizing = game.getTurn() == root;
+            float best = maximizing ? -Float.MAX_VALUE : Float.MAX_VALUE;
+            for (int i = 0; i < count && !aborted; i++) {
+                long undo = game.makeMove(rolled[i]);
+                float value = chance(game, remaining - 1);
+                game.unmakeMove(undo);
+                best = maximizing ? Math.max(best, value) : Math.min(best, value);
+            }
+            game.unmakeMove(beforeRoll);
+            sum += best;
+        }
+        if (aborted) {
+            return sum / 6;
+        }
+        table.store(key, remaining, sum / 6, Move.NONE);
+        return sum / 6;
+    }
+
+    /**
+     * @return how many positions the last search has visited
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return how many rolls the deepest look-ahead the last search has finished went
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return how long the last search took, in nanoseconds
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return how many positions per second the last search has visited
+     */
+    double getNodesPerSecond() {
+        return nanos == 0 ? 0 : nodes * 1e9 / nanos;
+    }
+}
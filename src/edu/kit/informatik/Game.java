@@ -1,293 +1,250 @@
 package edu.kit.informatik;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
-
-
 /**
  * Implements the classic Mensch Ärgere Dich Nicht game. The core of the game where most program logic comes together.
+ * The game is played on the board its {@link BoardGeometry} describes, the classic one unless a game is made for
+ * another one.
  * @author Emre Senliyim
  * @version 1.0
  */
 public final class Game {
 
-    private static final String[] PLAYER_NAMES = {"red", "blue", "green", "yellow"};
-    private static final int PATH_LENGTH = 40;
-    private static Game gameInstance;
+    private static final String[] PLAYER_NAMES = {"red", "blue", "green", "yellow", "purple", "orange"};
 
-    private String possibleMoves;
-    private HashMap<String, Player> players;
-    private Peg[] gameBoard;
-    private int turnCounter;
-    private int roll;
+    /**
+     * Stands for a list of possible moves that is out of date and is worked out again from the board when needed
+     */
+    private static final int STALE = -1;
+    /**
+     * Where the parts of an undo record are, see {@link #makeMove(int)}. The lower 32 bits hold the move.
+     */
+    private static final int CAPTURED_SHIFT = 32;
+    private static final int TURN_SHIFT = 35;
+    private static final int ROLL_SHIFT = 38;
+    private static final long EXTRA_ROLL = 1L << 41;
+    private static final long ENDED = 1L << 42;
+    private static final long AWAITING_MOVE = 1L << 43;
+
+    private final int[] possibleMoves = new int[Move.MAX_MOVES];
+    private int possibleMoveCount;
+    private Player[] players;
+    private BoardState state;
+    private PegMoverInterface pegMover;
     private boolean hasEnded;
+    private PrintCache printCache;
 
     /**
-     * Empty constructor for the class.
-     * First sets the interface variable for the player class
-     * Then initializes the game board
-     * Then starts the turn counter
+     * Empty constructor for the class. Any number of games can exist side by side, each of them with its own board.
+     * First creates the interface instance the players use to move pegs on this game's board
+     * Then initializes the game board, which also starts the turn counter
      * Then creates all the players
      */
-    private Game() {
-        setPlayerPegMover();
-        gameBoard = new Peg[PATH_LENGTH];
-        turnCounter = 0;
-        createPlayers();
-        hasEnded = false;
+    Game() {
+        this(BoardGeometry.CLASSIC);
     }
 
     /**
-     * Constructor overload. Takes initial game state as a parameter
-     * First sets the interface variable for the player class
-     * Then initializes the game board
-     * Then starts the turn counter
-     * Then creates all the players
-     * @param startPositions a 2D array that contains the starting positions of all individual players
+     * Creates a game on a board of any shape, where each player starts with all their pieces at home.
+     * @param geometry the shape of the board
      */
-    private Game(String[][] startPositions) {
-        setPlayerPegMover();
-        gameBoard = new Peg[PATH_LENGTH];
-        turnCounter = 0;
-        createPlayers(startPositions);
+    Game(BoardGeometry geometry) {
+        createPegMover();
+        state = new BoardState(geometry);
+        createPlayers();
         hasEnded = false;
     }
 
     /**
-     * The Game class is a singleton since per design only one instance of a running game is allowed to exist at any
-     * given time. Standard lazy singleton instancing procedure that waits for an instance to get requested before
-     * creating it.
-     * @return the game instance
+     * Constructor overload. Creates a game that continues from a given position, with the player in the position
+     * being up and about to roll the dice.
+     * @param position the position, which is copied so that the game and the caller don't share it
      */
-    static Game getInstance() {
-        if (gameInstance == null) {
-            gameInstance = new Game();
+    Game(BoardState position) {
+        createPegMover();
+        state = new BoardState(position);
+        createPlayers();
+        for (Player player : players) {
+            hasEnded |= player.hasWon();
         }
-        return gameInstance;
     }
 
     /**
-     * The instance getter overload that accepts an initial game state as a parameter.
+     * Copy constructor. The copy is at exactly the same point of the game as the original, including a dice roll
+     * whose move has not been made yet, but the two share nothing.
+     * @param other the game to be copied
+     */
+    Game(Game other) {
+        createPegMover();
+        state = new BoardState(other.state);
+        createPlayers();
+        possibleMoveCount = other.getPossibleMoveCount();
+        System.arraycopy(other.possibleMoves, 0, possibleMoves, 0, possibleMoveCount);
+        hasEnded = other.hasEnded;
+    }
+
+    /**
+     * Creates a new game that starts from custom settings.
+     * @param geometry the shape of the board
      * @param settings a string that contains the starting positions of every single piece. Gets parsed and verified
      *                 later.
-     * @return the game instance
+     * @return the new game, null if the settings are invalid
      */
-    static Game getInstance(String settings) {
+    static Game withSettings(BoardGeometry geometry, String settings) {
 
-        String[][] startPositions = parseSettings(settings);
-        if (startPositions == null) {
+        BoardState start = parseSettings(geometry, settings);
+        if (start == null) {
             return null;
         }
-        if (gameInstance == null) {
-            gameInstance = new Game(startPositions);
-        }
-        return gameInstance;
+        return new Game(start);
     }
 
 
     /**
-     * Creates 4 players with all their pieces at home.
+     * Creates as many players on top of the board as it is made for.
      */
     private void createPlayers() {
-        players = new HashMap<>();
-        for (int i = 0; i < PLAYER_NAMES.length; i++) {
-            players.put(PLAYER_NAMES[i], new Player(i * (PATH_LENGTH / 4), i));
+        BoardGeometry geometry = state.getGeometry();
+        players = new Player[geometry.getPlayers()];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player(state, pegMover, geometry.getStartIndex(i), i);
         }
     }
 
     /**
-     * Overload
-     * Creates 4 players with custom starting positions
-     * @param startPositions a 2D array that contains all the individual starting positions of every single player piece
-     */
-    private void createPlayers(String[][] startPositions) {
-        players = new HashMap<>();
-        for (int i = 0; i < PLAYER_NAMES.length; i++) {
-            players.put(PLAYER_NAMES[i], new Player(i * (PATH_LENGTH / 4), startPositions[i], i));
-        }
-    }
-
-    /**
-     * Verifies and processes the initial game state parameter put in by the user. A settings parameter will be deemed
-     * invalid if it
-     * - does not match the expected input pattern
-     * - describes a game that has no playable moves left
-     * - has two starting positions pointing at the same spot that is not a player's home area
+     * Verifies and processes the initial game state parameter put in by the user. See {@link SettingsParser} for when
+     * settings are deemed invalid. Settings that have been used recently are not read again.
+     * @param geometry the shape of the board
      * @param settings The raw settings string as given by the player.
-     * @return a 2D array that contains all the individual starting positions of every single player piece if the input
-     * argument is valid, a null object if it is not.
+     * @return the board described by the settings if the input argument is valid, a null object if it is not. The
+     * board may be shared with other callers and must not be changed.
      */
-    private static String[][] parseSettings(String settings) {
-
-        String settingsPattern = Player.getRedStartSpots() + "," + Player.getRedStartSpots() + ","
-                + Player.getRedStartSpots() + "," + Player.getRedStartSpots() + ";" + Player.getBlueStartSpots()
-                + "," + Player.getBlueStartSpots() + "," + Player.getBlueStartSpots() + ","
-                + Player.getBlueStartSpots() + ";" + Player.getGreenStartSpots() + "," + Player.getGreenStartSpots()
-                + "," + Player.getGreenStartSpots() + "," + Player.getGreenStartSpots() + ";"
-                + Player.getYellowStartSpots() + "," + Player.getYellowStartSpots() + "," + Player.getYellowStartSpots()
-                + "," + Player.getYellowStartSpots();
-
-        if (!settings.matches(settingsPattern)) {
-            return null;
-        }
-
-        String[] colorPositions = settings.replaceAll("[S][RGBY]", "").split(";", 4);
-        String[][] startPositions = new String[PLAYER_NAMES.length][colorPositions.length];
-        Set<String> noDupesPls = new HashSet<>();
-
-        int startCounter = 0;
-        for (int i = 0; i < startPositions.length; i++) {
-            char playerChar = PLAYER_NAMES[i].toUpperCase().charAt(0);
-            int index = 0;
-            String pos;
-            String moveCheck = "";
-
-            for (int j = 0; j < startPositions[0].length - 1; j++) {
-                pos = colorPositions[i].substring(index, colorPositions[i].indexOf(",", index));
-                if (pos.equals("")) {
-                    pos = "S" + playerChar;
-                    startCounter++;
-                } else {
-                    noDupesPls.add(pos);
-                    moveCheck = moveCheck.concat(pos);
-                }
-                startPositions[i][j] = pos;
-
-                index = colorPositions[i].indexOf(",", index) + 1;
-            }
-            pos = colorPositions[i].substring(colorPositions[i].lastIndexOf(",") + 1);
-            if (pos.equals("")) {
-                pos = "S" + playerChar;
-                startCounter++;
-            } else {
-                noDupesPls.add(pos);
-                moveCheck = moveCheck.concat(pos);
-            }
-            startPositions[i][3] = pos;
-
-            if (moveCheck.matches("([ABCD]" + playerChar + "){4}")) {
-                return null;
-            }
-        }
-
-        if (noDupesPls.size() + startCounter == 16) {
-            return startPositions;
-        } else {
-            return null;
-        }
+    static BoardState parseSettings(BoardGeometry geometry, String settings) {
+        return SettingsParser.parseCached(geometry, settings);
     }
 
     /**
-     * Sets the peg mover interface instance of the Player class, so that it can communicate with this class and
-     * perform actions on gameBoard without referencing this class or its elements.
+     * Creates the peg mover interface instance that this game's players get, so that they can communicate with this
+     * class and perform actions on gameBoard without referencing this class or its elements.
      */
-    private void setPlayerPegMover() {
-        Player.setPegMover(new PegMoverInterface() {
+    private void createPegMover() {
+        pegMover = new PegMoverInterface() {
             @Override
-            public void launchPeg(int position, Peg peg) {
-                if (gameBoard[position] != null && gameBoard[position].getOwner() != peg.getOwner()) {
-                    gameBoard[position].setHome(true);
-                    gameBoard[position].setPosition(4);
+            public void launchPeg(int position, int owner) {
+                int occupant = state.getOccupant(position);
+                if (occupant != -1 && occupant != owner) {
+                    state.remove(occupant, position);
                 }
-                peg.setHome(false);
-                peg.setPosition(position);
-                gameBoard[position] = peg;
+                state.place(owner, position);
             }
-        });
+        };
     }
 
+    /**
+     * Shows the board the way the print command does. The text is kept between calls and only the lines of players
+     * whose pegs moved since are written again, see {@link PrintCache}.
+     * @return the printed board
+     */
     @Override
     public String toString() {
-
-        String text = "";
-
-        for (String playerName : PLAYER_NAMES) {
-            text = text.concat(players.get(playerName).toString() + "\n");
+        if (printCache == null) {
+            printCache = new PrintCache(state);
         }
-
-        return text.concat(PLAYER_NAMES[turnCounter]);
+        return printCache.print();
     }
 
     /**
-     * Runs after each turn to reevaluate the gameBoard and to determine if anyone has won.
-     * @return nothing if the game hasn't ended, " winner" if it has.
+     * Runs after each turn to reevaluate the gameBoard and to determine if anyone has won. If nobody has, the turn is
+     * handed over to the next player unless the last roll was a 6.
+     * @param launched true if the move was a launch, which uses the 6 up so that the turn is over either way
      */
-    private String checkGameState() {
-        for (int i = 0; i < players.size(); i++) {
-            if (players.get(PLAYER_NAMES[i]).hasWon()) {
+    private void checkGameState(boolean launched) {
+        for (Player player : players) {
+            if (player.hasWon()) {
                 hasEnded = true;
-                return PLAYER_NAMES[turnCounter] + " winner";
+                return;
             }
         }
-        if (roll == 6) {
-            return PLAYER_NAMES[turnCounter];
+        if (state.getRoll() == 6 && !launched) {
+            state.setExtraRoll(true);
+        } else {
+            nextTurn();
         }
-        turnCounter = (turnCounter + 1) % PLAYER_NAMES.length;
-        return PLAYER_NAMES[turnCounter];
+    }
+
+    /**
+     * Hands the turn over to the next player.
+     */
+    private void nextTurn() {
+        state.setTurn((state.getTurn() + 1) % players.length);
+        state.setExtraRoll(false);
     }
 
     /**
      * Called after each valid dice roll, this method generates a list of possible moves that can be made in the current
-     * turn.
+     * turn. If there are none, the turn is handed over to the next player right away.
      * @param roll the number that came out of the dice roll
-     * @return the list of possible moves
+     * @param moves the array the encoded moves are written to, needs room for {@link Move#MAX_MOVES} moves
+     * @return how many possible moves there are
      */
-    String getMoves(int roll) {
-
-        String playerName = String.valueOf(PLAYER_NAMES[turnCounter].toUpperCase().charAt(0));
-        String[] endLetters = {"A", "B", "C", "D"};
-        String moves = "";
-        Player player = players.get(PLAYER_NAMES[turnCounter]);
-        int endSpot = player.getEndIndex();
-        Peg[] endArea = player.getEndArea();
-
-        //If the dice roll is a 6 AND the user has a launchable piece AND the start position is available, that's the
-        //only possible move
-        if (roll == 6 && player.hasLaunchReady() != null && (gameBoard[player.getStartIndex()] == null
-                || gameBoard[player.getStartIndex()].getOwner() != turnCounter)) {
-            moves = moves.concat("S" + playerName + "-" + player.getStartIndex() + "\n");
-            this.roll = roll;
-            possibleMoves = moves;
-            return moves.concat(PLAYER_NAMES[turnCounter]);
+    int getMoves(int roll, int[] moves) {
+        int count = MoveGenerator.generate(state, roll, moves);
+        if (count == 0) {
+            nextTurn();
+        } else {
+            state.setRoll(roll);
+            state.setExtraRoll(false);
+            System.arraycopy(moves, 0, possibleMoves, 0, count);
         }
+        possibleMoveCount = count;
+        return count;
+    }
 
-        for (int i = 0; i < PATH_LENGTH; i++) {
-            if (gameBoard[i] != null && gameBoard[i].getOwner() == turnCounter) {
-                int target = (i + roll) % PATH_LENGTH;
-                if ((target < i ^ ((endSpot - target) < 0 && endSpot > i))) {
-                    if ((roll - (endSpot - i) - 1) < endArea.length && endArea[roll - (endSpot - i) - 1] == null) {
-                        moves = moves.concat(i + "-" + endLetters[roll - (endSpot - i) - 1] + playerName + "\n");
-                    }
-                } else if (gameBoard[target] == null || gameBoard[target].getOwner() != turnCounter) {
-                    moves = moves.concat(i + "-" + target + "\n");
-                }
-
+    /**
+     * Looks for the possible move that takes the peg at the given location
+     * @param from the location code of the peg that is to be moved
+     * @return the encoded move, {@link Move#NONE} if there is no such move
+     */
+    int findMove(int from) {
+        for (int i = 0, count = getPossibleMoveCount(); i < count; i++) {
+            if (Move.getFrom(possibleMoves[i]) == from) {
+                return possibleMoves[i];
             }
         }
+        return Move.NONE;
+    }
 
-        if (roll < endArea.length) {
-            for (int i = 0; i < endArea.length; i++) {
-                if ((i + roll) < endArea.length && endArea[i] != null
-                        && endArea[i + roll] == null) {
-                    moves = moves.concat(endLetters[i] + playerName + "-"
-                            + endLetters[i + roll] + playerName + "\n");
-                }
-            }
-        }
+    /**
+     * Lists the moves that the last dice roll made possible and that are waiting for one of them to be made
+     * @param moves the array the encoded moves are written to, needs room for {@link Move#MAX_MOVES} moves
+     * @return how many moves have been written, 0 if the dice has to be rolled first
+     */
+    int getPossibleMoves(int[] moves) {
+        int count = getPossibleMoveCount();
+        System.arraycopy(possibleMoves, 0, moves, 0, count);
+        return count;
+    }
 
-        if (moves.equals("")) {
-            turnCounter = (turnCounter + 1) % PLAYER_NAMES.length;
-            possibleMoves = null;
-        } else {
-            this.roll = roll;
-            possibleMoves = moves;
+    /**
+     * @return true if the dice has been rolled and one of the possible moves has to be made now
+     */
+    boolean isAwaitingMove() {
+        return possibleMoveCount != 0;
+    }
+
+    /**
+     * Works the list of possible moves out again if an undone move left it out of date
+     * @return how many possible moves there are
+     */
+    private int getPossibleMoveCount() {
+        if (possibleMoveCount == STALE) {
+            possibleMoveCount = MoveGenerator.generate(state, state.getRoll(), possibleMoves);
         }
-        return moves.concat(PLAYER_NAMES[turnCounter]);
+        return possibleMoveCount;
     }
 
     /**
-     * returns the player's name
+     * returns the player's name. The names are the same on every board, a board with fewer players just leaves the
+     * last ones out.
      * @param index the id that will be used as a key to get the name
      * @return the name as a string
      */
@@ -296,94 +253,149 @@ public final class Game {
     }
 
     /**
-     * Verifies the move that the user has chosen to make, and executes it if possible.
-     * @param choice A String in the form of "XX YY" where XX is the position of the peg to be moved, and YY is where
-     *               the peg is supposed to be moved to.
-     * @return error message if the choice is invalid, the result of the checkGameState method otherwise
+     * returns the letter that stands for the player on the gameBoard
+     * @param index the player's id
+     * @return the first letter of the player's name, upper case
      */
-    String executeTheMove(String choice) {
-        if (!choice.matches("[SABC][RGBY]|\\w{1,2}")) {
-            return "Error, invalid move choice!";
-        } else if (possibleMoves == null) {
-            return "Error, must roll the dice first!";
-        }
+    static char getPlayerChar(int index) {
+        return Character.toUpperCase(PLAYER_NAMES[index].charAt(0));
+    }
 
-        Player player = players.get(PLAYER_NAMES[turnCounter]);
+    /**
+     * @param index the player's id
+     * @return the player
+     */
+    Player getPlayer(int index) {
+        return players[index];
+    }
+
+    /**
+     * Returns the board of this game. It is the live board, not a copy, so it must not be changed from outside.
+     * @return the board
+     */
+    BoardState getState() {
+        return state;
+    }
 
-        if (possibleMoves.contains(choice + "-")) {
-            // First it is checked if the user is launching a new peg
-            int index = possibleMoves.indexOf("-", possibleMoves.indexOf(choice)) + 1;
-            String target = possibleMoves.substring(index, possibleMoves.indexOf("\n", index + 1));
-            if (choice.charAt(0) == 'S') {
+    /**
+     * @return the id of the player who is up
+     */
+    int getTurn() {
+        return state.getTurn();
+    }
+
+    /**
+     * Executes one of the moves that the last dice roll made possible.
+     * @param move the encoded move, as written by {@link #getMoves(int, int[])}
+     * @return the id of the player who is up next, or of the winner if the game has ended. -1 if the move is not one
+     * of the possible moves, in which case nothing happens.
+     */
+    int executeMove(int move) {
+        int count = getPossibleMoveCount();
+        int index = 0;
+        while (index < count && possibleMoves[index] != move) {
+            index++;
+        }
+        if (index == count) {
+            return -1;
+        }
+        makeMove(move);
+        return state.getTurn();
+    }
+
+    /**
+     * Makes a move without checking it, so that it can be taken back with {@link #unmakeMove(long)}. Meant for
+     * searches that try millions of moves: neither call creates any garbage, and the game never has to be copied.
+     * The undo record is a long that holds the move, whose peg it sent home, and everything {@link #mark()} holds.
+     * @param move one of the moves {@link #getMoves(int, int[])} has just written for the game as it is now
+     * @return the undo record
+     */
+    long makeMove(int move) {
+        BoardGeometry geometry = state.getGeometry();
+        int turn = state.getTurn();
+        Player player = players[turn];
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        int captured = Move.isCapture(move) ? state.getOccupant(to) : -1;
+        long undo = getTurnRecord() | (long) (captured + 1) << CAPTURED_SHIFT | move & 0xFFFFFFFFL;
+
+        switch (Move.getKind(move)) {
+            case Move.LAUNCH:
                 player.launchAPeg();
-                turnCounter = (turnCounter + 1) % PLAYER_NAMES.length;
-            } else if (choice.matches("[ABC]" + PLAYER_NAMES[turnCounter].toUpperCase().charAt(0))) {
-                // then it is checked if the player is moving a peg within the end area
-                switch (choice.charAt(0)) {
-                    case 'A':
-                        player.moveInsideTheEndArea(0, roll);
-                        break;
-                    case 'B':
-                        player.moveInsideTheEndArea(1, 1 + roll);
-                        break;
-                    case 'C':
-                        player.moveInsideTheEndArea(2, 2 + roll);
-                        break;
-                    default:
-                        break;
-                }
-            } else if (choice.matches("\\d{1,2}") && !target.matches("\\d{1,2}")) {
-                int pos = Integer.valueOf(choice);
-                switch (target.charAt(0)) {
-                    case 'A':
-                        player.aNewPegHasArrived(0, gameBoard[pos]);
-                        gameBoard[pos] = null;
-                        break;
-                    case 'B':
-                        player.aNewPegHasArrived(1, gameBoard[pos]);
-                        gameBoard[pos] = null;
-                        break;
-                    case 'C':
-                        player.aNewPegHasArrived(2, gameBoard[pos]);
-                        gameBoard[pos] = null;
-                        break;
-                    case 'D':
-                        player.aNewPegHasArrived(3, gameBoard[pos]);
-                        gameBoard[pos] = null;
-                        break;
-                    default:
-                        break;
+                break;
+            case Move.END_AREA:
+                player.moveInsideTheEndArea(geometry.getEndSpot(from), geometry.getEndSpot(to));
+                break;
+            case Move.ENTER:
+                player.aNewPegHasArrived(geometry.getEndSpot(to), from);
+                break;
+            default:
+                if (captured != -1) {
+                    // whoever was standing there goes back home
+                    state.remove(captured, to);
                 }
-            } else {
-                int pos = Integer.valueOf(choice);
-                int targetPos = Integer.valueOf(target);
-                if (gameBoard[targetPos] != null) {
-                    gameBoard[targetPos].setHome(true);
-                    gameBoard[targetPos].setPosition(-4);
-                }
-                gameBoard[targetPos] = gameBoard[pos];
-                gameBoard[targetPos].setPosition(targetPos);
-                gameBoard[pos] = null;          }
-            possibleMoves = null;
-            return target + "\n" + checkGameState();
-        } else {
-            return "Error, invalid move choice!";
+                state.remove(turn, from);
+                state.place(turn, to);
+                break;
         }
+        possibleMoveCount = 0;
+        checkGameState(Move.getKind(move) == Move.LAUNCH);
+        return undo;
+    }
+
+    /**
+     * Gives an undo record for the game as it is now, for taking back a dice roll: {@link #unmakeMove(long)} brings
+     * back who is up, the roll, whether they roll again, whether the game is over and the possible moves, but leaves
+     * the pegs alone. Any moves made since must have been taken back first.
+     * @return the undo record
+     */
+    long mark() {
+        return getTurnRecord() | Move.NONE & 0xFFFFFFFFL;
+    }
 
+    /**
+     * @return the part of an undo record that does not depend on the move: who is up, the roll, whether they roll
+     * again, whether the game is over and whether a move is awaited
+     */
+    private long getTurnRecord() {
+        return (long) state.getTurn() << TURN_SHIFT | (long) state.getRoll() << ROLL_SHIFT
+                | (state.hasExtraRoll() ? EXTRA_ROLL : 0) | (hasEnded ? ENDED : 0)
+                | (possibleMoveCount != 0 ? AWAITING_MOVE : 0);
     }
 
     /**
-     * Resets the game by setting the only existing instance of it to null. Everything gets wiped.
+     * Takes back a move made with {@link #makeMove(int)}, or everything since {@link #mark()}, so that the game is
+     * exactly as it was before. Moves must be taken back in the opposite order they were made in.
+     * @param undo the undo record
      */
-    static void resetGame() {
-        gameInstance = null;
+    void unmakeMove(long undo) {
+        int move = (int) undo;
+        int turn = (int) (undo >>> TURN_SHIFT) & 7;
+        if (move != Move.NONE) {
+            int from = Move.getFrom(move);
+            int to = Move.getTo(move);
+            state.remove(turn, to);
+            if (!Peg.isHome(from)) {
+                state.place(turn, from);
+            }
+            int captured = (int) (undo >>> CAPTURED_SHIFT & 7) - 1;
+            if (captured != -1) {
+                state.place(captured, to);
+            }
+        }
+        state.setTurn(turn);
+        state.setRoll((int) (undo >>> ROLL_SHIFT) & 7);
+        state.setExtraRoll((undo & EXTRA_ROLL) != 0);
+        hasEnded = (undo & ENDED) != 0;
+        // the list itself may have been written over since, it is only worked out again if anyone asks for it
+        possibleMoveCount = (undo & AWAITING_MOVE) != 0 ? STALE : 0;
     }
 
     /**
-     * @return how long is the path that each piece needs to go before arriving at their destination
+     * @return the shape of the board this game is played on
      */
-    static int getPathLength() {
-        return PATH_LENGTH;
+    BoardGeometry getGeometry() {
+        return state.getGeometry();
     }
 
     /**
@@ -0,0 +1,84 @@
+package edu.kit.informatik;
+
+/**
+ * Tells the outside world what happens in the sessions: every turn, every game that starts and every game that ends.
+ * Where this goes is Java Flight Recorder, if the runtime has it and the event classes in the jfr source folder are
+ * on the class path, see FlightRecorderEvents. Otherwise nothing is told to anyone, and since {@link #EVENTS} is then
+ * a constant that does nothing, the JIT removes every call to it.
+ * Telling about a turn takes some work on the caller's side, so callers ask {@link #isTurnEnabled()} first.
+ */
+abstract class GameEvents {
+
+    /**
+     * Where the events go
+     */
+    static final GameEvents EVENTS = load();
+
+    /**
+     * @return true if anyone listens to turns, false if telling about them would be wasted work
+     */
+    abstract boolean isTurnEnabled();
+
+    /**
+     * Tells about a turn that is over, which is the case once its move has been made or if there was no move to make
+     * @param session the id of the session
+     * @param geometry the shape of the board
+     * @param player the id of the player whose turn it was
+     * @param roll what the dice showed
+     * @param legalMoves how many moves the roll made possible
+     * @param move the encoded move that was made, {@link Move#NONE} if there was none
+     * @param nanos how long the engine took for the turn, from listing the moves to making one
+     */
+    abstract void turn(String session, BoardGeometry geometry, int player, int roll, int legalMoves, int move,
+            long nanos);
+
+    /**
+     * Tells about a game that has just started
+     * @param session the id of the session
+     * @param geometry the shape of the board
+     * @param custom true if it started from custom settings, false if from the default ones
+     */
+    abstract void gameStarted(String session, BoardGeometry geometry, boolean custom);
+
+    /**
+     * Tells about a game that is over
+     * @param session the id of the session
+     * @param winner the id of the winner, -1 if the game was ended before anyone won
+     * @param turns how many turns were played, counting every roll
+     */
+    abstract void gameEnded(String session, int winner, int turns);
+
+    /**
+     * Picks the flight recorder events if they can be loaded, events that go nowhere otherwise
+     * @return where the events go
+     */
+    private static GameEvents load() {
+        try {
+            return (GameEvents) Class.forName("edu.kit.informatik.FlightRecorderEvents").getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new GameEvents() {
+                @Override
+                boolean isTurnEnabled() {
+                    return false;
+                }
+
+                @Override
+                void turn(String session, BoardGeometry geometry, int player, int roll, int legalMoves, int move,
+                        long nanos) {
+
+                }
+
+                @Override
+                void gameStarted(String session, BoardGeometry geometry, boolean custom) {
+
+                }
+
+                @Override
+                void gameEnded(String session, int winner, int turns) {
+
+                }
+            };
+        }
+    }
+}
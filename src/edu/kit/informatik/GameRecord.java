@@ -0,0 +1,131 @@
+package edu.kit.informatik;
+
+import java.util.Arrays;
+
+/**
+ * What happened in one game, turn by turn, the way a {@link GameStore} keeps it: the start settings, then for every
+ * dice roll the number it showed, the peg that was moved and whose peg that sent home, and at the end who won. A turn
+ * here is a single roll, so a player who rolls a 6 has several of them in a row.
+ * A record is filled while the game is played and can be used again for the next game, so recording millions of games
+ * creates hardly any garbage.
+ */
+final class GameRecord {
+
+    /**
+     * The move column's value for a roll that did not allow any move
+     */
+    static final int PASS = 0;
+
+    private String settings;
+    private byte[] rolls = new byte[256];
+    private byte[] moves = new byte[256];
+    private byte[] captured = new byte[256];
+    private int turns;
+    private int firstCapture;
+    private int captures;
+    private int winner;
+
+    /**
+     * Starts recording a game
+     * @param game the game before its first roll
+     */
+    void start(Game game) {
+        settings = GameStateCodec.appendSettings(game.getState(), new StringBuilder()).toString();
+        turns = 0;
+        firstCapture = 0;
+        captures = 0;
+        winner = -1;
+    }
+
+    /**
+     * Records a dice roll and the move that is made for it. Must be called before the move is made.
+     * @param game the game, with the dice rolled
+     * @param roll the number the dice showed
+     * @param move the move that is about to be made, {@link Move#NONE} if the roll allowed none
+     */
+    void addTurn(Game game, int roll, int move) {
+        if (turns == rolls.length) {
+            rolls = Arrays.copyOf(rolls, turns * 2);
+            moves = Arrays.copyOf(moves, turns * 2);
+            captured = Arrays.copyOf(captured, turns * 2);
+        }
+        int victim = move != Move.NONE && Move.isCapture(move) ? game.getState().getOccupant(Move.getTo(move)) : -1;
+        rolls[turns] = (byte) roll;
+        moves[turns] = (byte) (move == Move.NONE ? PASS : Move.getFrom(move) - Peg.NOWHERE);
+        captured[turns] = (byte) victim;
+        turns++;
+        if (victim != -1) {
+            captures++;
+            if (firstCapture == 0) {
+                firstCapture = turns;
+            }
+        }
+    }
+
+    /**
+     * Records how the game ended
+     * @param game the game after its last move
+     */
+    void finish(Game game) {
+        winner = game.hasEnded() ? game.getTurn() : -1;
+    }
+
+    /**
+     * @return the start settings in the format the start command takes them
+     */
+    String getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return how many times the dice was rolled
+     */
+    int getTurns() {
+        return turns;
+    }
+
+    /**
+     * @param turn the index of a turn
+     * @return the number the dice showed
+     */
+    int getRoll(int turn) {
+        return rolls[turn];
+    }
+
+    /**
+     * @param turn the index of a turn
+     * @return the location code the moved peg came from minus {@link Peg#NOWHERE}, {@link #PASS} if there was no move
+     */
+    int getMove(int turn) {
+        return moves[turn];
+    }
+
+    /**
+     * @param turn the index of a turn
+     * @return the id of the player whose peg was sent home, -1 if nobody's was
+     */
+    int getCaptured(int turn) {
+        return captured[turn];
+    }
+
+    /**
+     * @return how many turns it took until the first peg was sent home, counting that turn, 0 if none ever was
+     */
+    int getFirstCapture() {
+        return firstCapture;
+    }
+
+    /**
+     * @return how many pegs were sent home
+     */
+    int getCaptures() {
+        return captures;
+    }
+
+    /**
+     * @return the id of the winner, -1 if the game was given up on
+     */
+    int getWinner() {
+        return winner;
+    }
+}
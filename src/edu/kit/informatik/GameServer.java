@@ -0,0 +1,532 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays the console's line protocol over TCP, with a session of its own for every connection. Each line a client sends
+ * is a command, and the answer is exactly what the console would print for it. "quit" closes the connection.
+ * An acceptor thread takes new connections and hands them to a few selector threads in turn. Each selector thread
+ * reads the lines of its connections from a small direct buffer per connection, and it is the only thread that writes
+ * to them. Commands run on a separate pool, one at a time per connection, so a long move search never holds up the
+ * other connections of its selector. Answers are queued and written when the client can take them. A client that
+ * does not read its answers is not read from either, until it has caught up.
+ * An idle connection costs its socket, a selection key and a read buffer, so a handful of threads holds many thousands.
+ */
+final class GameServer implements AutoCloseable {
+
+    private static final int READ_BUFFER = 512;
+    private static final int WRITE_BUFFER = 1 << 16;
+    /**
+     * Clients that send longer lines are disconnected
+     */
+    private static final int MAX_LINE = 1 << 13;
+    /**
+     * A client is not read from while this many bytes of answers are waiting for it
+     */
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    /**
+     * What a client is told before its connection is closed because a command or its journal failed
+     */
+    private static final String FAILED = "Error, the command failed, closing the connection!";
+
+    private final Controller controller;
+    private final ServerSocketChannel server;
+    private final SelectorLoop[] loops;
+    private final ExecutorService commands;
+    private final Thread acceptor;
+    private final String sessionPrefix = "tcp-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong connectionIds = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * Opens the server socket. Nothing is accepted before {@link #start()}.
+     * @param controller the controller that runs the games
+     * @param address the address to listen on, port 0 for any free port
+     * @param selectors how many selector threads serve the connections
+     * @param workers how many threads run commands
+     * @throws IOException if the socket can't be opened
+     */
+    GameServer(Controller controller, InetSocketAddress address, int selectors, int workers) throws IOException {
+        this.controller = controller;
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(address, 1024);
+        loops = new SelectorLoop[Math.max(1, selectors)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop();
+        }
+        commands = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "game-server-command");
+            thread.setDaemon(true);
+            return thread;
+        });
+        acceptor = new Thread(this::accept, "game-server-acceptor");
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @return how many connections are open
+     */
+    long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Starts accepting and serving connections
+     */
+    void start() {
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "game-server-selector-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptor.start();
+    }
+
+    /**
+     * Waits until the server is closed
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    void await() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Stops the server and closes every connection. The games of the connections end with them.
+     * @throws IOException if the server socket can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        for (SelectorLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        commands.shutdown();
+        try {
+            commands.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes new connections and spreads them over the selector threads
+     */
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // the connection is lost before it was set up, the server goes on
+                continue;
+            }
+        }
+    }
+
+    /**
+     * A selector thread and the connections it serves
+     */
+    private final class SelectorLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> answered = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+
+        /**
+         * Opens the selector
+         * @throws IOException if it can't be opened
+         */
+        private SelectorLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Hands a new connection to this thread
+         * @param channel the connection
+         */
+        private void add(SocketChannel channel) {
+            accepted.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Tells this thread that a connection has new answers to be written
+         * @param connection the connection
+         */
+        private void answer(Connection connection) {
+            answered.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    for (SocketChannel channel; (channel = accepted.poll()) != null;) {
+                        register(channel);
+                    }
+                    for (Connection connection; (connection = answered.poll()) != null;) {
+                        write(connection);
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    close((Connection) key.attachment());
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // nothing left to do about it
+                }
+            }
+        }
+
+        /**
+         * Starts serving a new connection
+         * @param channel the connection
+         */
+        private void register(SocketChannel channel) {
+            Connection connection = new Connection(channel, this);
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connectionCount.incrementAndGet();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+        }
+
+        /**
+         * Reads whatever a client has sent and queues every complete line as a command
+         * @param connection the connection
+         */
+        private void read(Connection connection) {
+            ByteBuffer input = connection.input;
+            int read;
+            try {
+                read = connection.channel.read(input);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                close(connection);
+                return;
+            }
+            input.flip();
+            while (input.hasRemaining()) {
+                byte b = input.get();
+                if (b == '\n') {
+                    connection.submit(connection.takeLine());
+                } else if (!connection.append(b)) {
+                    close(connection);
+                    return;
+                }
+            }
+            input.clear();
+        }
+
+        /**
+         * Writes as much of the queued answers as the client takes, and waits for the client to take more if needed
+         * @param connection the connection
+         */
+        private void write(Connection connection) {
+            if (!connection.key.isValid()) {
+                return;
+            }
+            boolean done;
+            boolean quit;
+            boolean reading;
+            synchronized (connection) {
+                try {
+                    while (!connection.output.isEmpty()) {
+                        writeBuffer.clear();
+                        for (ByteBuffer answer : connection.output) {
+                            if (writeBuffer.remaining() < answer.remaining()) {
+                                ByteBuffer part = answer.duplicate();
+                                part.limit(part.position() + writeBuffer.remaining());
+                                writeBuffer.put(part);
+                                break;
+                            }
+                            writeBuffer.put(answer.duplicate());
+                        }
+                        writeBuffer.flip();
+                        int written = connection.channel.write(writeBuffer);
+                        connection.pendingOutput -= written;
+                        while (written > 0) {
+                            ByteBuffer answer = connection.output.peek();
+                            int taken = Math.min(written, answer.remaining());
+                            answer.position(answer.position() + taken);
+                            written -= taken;
+                            if (!answer.hasRemaining()) {
+                                connection.output.poll();
+                            }
+                        }
+                        if (writeBuffer.hasRemaining()) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    connection.output.clear();
+                    connection.quit = true;
+                }
+                done = connection.output.isEmpty();
+                quit = connection.quit && done;
+                reading = connection.pendingOutput < MAX_PENDING_OUTPUT;
+            }
+            if (quit) {
+                close(connection);
+            } else {
+                connection.key.interestOps((reading ? SelectionKey.OP_READ : 0) | (done ? 0 : SelectionKey.OP_WRITE));
+            }
+        }
+
+        /**
+         * Closes a connection and ends the game of its session
+         * @param connection the connection
+         */
+        private void close(Connection connection) {
+            if (!connection.channel.isOpen()) {
+                return;
+            }
+            connection.key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                // the connection is gone either way
+            }
+            connectionCount.decrementAndGet();
+            connection.closed();
+        }
+    }
+
+    /**
+     * A single client. The line being read belongs to the selector thread, the queues are guarded by the connection.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final SelectorLoop loop;
+        private final String sessionId = sessionPrefix + Long.toString(connectionIds.getAndIncrement(), 36);
+        private final ByteBuffer input = ByteBuffer.allocateDirect(READ_BUFFER);
+        private SelectionKey key;
+        private byte[] line = new byte[64];
+        private int lineLength;
+
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private int pendingOutput;
+        private boolean executing;
+        private boolean quitting;
+        private boolean quit;
+        private boolean closed;
+
+        /**
+         * @param channel the connection
+         * @param loop the selector thread that serves it
+         */
+        private Connection(SocketChannel channel, SelectorLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        /**
+         * Adds a byte to the line being read
+         * @param b the byte
+         * @return false if the line has become too long
+         */
+        private boolean append(byte b) {
+            if (lineLength == line.length) {
+                if (line.length >= MAX_LINE) {
+                    return false;
+                }
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+            return true;
+        }
+
+        /**
+         * @return the line that has just been read completely, without a carriage return at its end
+         */
+        private String takeLine() {
+            int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Queues a command and makes sure somebody runs it
+         * @param command the line the client sent
+         */
+        private void submit(String command) {
+            synchronized (this) {
+                if (quitting || closed) {
+                    return;
+                }
+                quitting = command.equals("quit");
+                lines.add(command);
+                if (executing) {
+                    return;
+                }
+                executing = true;
+            }
+            commands.execute(this::execute);
+        }
+
+        /**
+         * Runs the queued commands one after the other, until there are none left. If a command or the journal fails,
+         * the session can't be trusted any more: the client is told, and the connection is closed.
+         */
+        private void execute() {
+            while (true) {
+                String command;
+                synchronized (this) {
+                    command = closed ? null : lines.poll();
+                    if (command == null) {
+                        executing = false;
+                        if (closed) {
+                            resetGame();
+                        } else {
+                            flushJournal();
+                        }
+                        return;
+                    }
+                }
+                String answer;
+                try {
+                    answer = Main.execute(controller, sessionId, command);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                synchronized (this) {
+                    quit |= command.equals("quit");
+                    if (answer != null && !closed) {
+                        byte[] text = answer.getBytes(StandardCharsets.UTF_8);
+                        ByteBuffer bytes = ByteBuffer.allocate(text.length + LINE_SEPARATOR.length);
+                        bytes.put(text).put(LINE_SEPARATOR).flip();
+                        output.add(bytes);
+                        pendingOutput += bytes.remaining();
+                    }
+                }
+                if (answer != null || command.equals("quit")) {
+                    loop.answer(this);
+                }
+            }
+        }
+
+        /**
+         * Writes out the session's journal after a burst of commands. Must be called with the connection locked.
+         */
+        private void flushJournal() {
+            try {
+                controller.getSessions().flush(sessionId);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Ends the game of the session once the connection is closed and no command is running any more
+         */
+        private void resetGame() {
+            try {
+                controller.resetGame(sessionId);
+            } catch (UncheckedIOException e) {
+                Terminal.printError("session " + sessionId + " could not be ended: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Gives up on the connection after a command or the journal has failed. Every command still queued is dropped,
+         * the client gets an error line and the connection is closed once it has been written.
+         * @param cause what went wrong
+         */
+        private void fail(Exception cause) {
+            Terminal.printError("session " + sessionId + " failed: " + cause.getMessage());
+            boolean wasClosed;
+            synchronized (this) {
+                executing = false;
+                lines.clear();
+                quitting = true;
+                quit = true;
+                wasClosed = closed;
+                if (!closed) {
+                    byte[] text = FAILED.getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer bytes = ByteBuffer.allocate(text.length + LINE_SEPARATOR.length);
+                    bytes.put(text).put(LINE_SEPARATOR).flip();
+                    output.add(bytes);
+                    pendingOutput += bytes.remaining();
+                }
+            }
+            if (wasClosed) {
+                resetGame();
+            } else {
+                loop.answer(this);
+            }
+        }
+
+        /**
+         * Called once the connection is closed. The game ends right away, or after the command that is running.
+         */
+        private void closed() {
+            boolean idle;
+            synchronized (this) {
+                closed = true;
+                lines.clear();
+                output.clear();
+                idle = !executing;
+            }
+            if (idle) {
+                resetGame();
+            }
+        }
+    }
+}
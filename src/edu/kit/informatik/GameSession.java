@@ -0,0 +1,402 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+
+/**
+ * One table: a game that can be started, played, printed and reset on its own, independently of every other session.
+ * Holds everything the text protocol needs per game, so that any number of sessions can be played side by side.
+ * All methods lock on the session, so commands for the same session may come from different threads.
+ * A session may keep a {@link Journal}, in which case every command that changes the game is recorded in it.
+ * Turns, starts and ends of games are told to {@link GameEvents}.
+ * Games are started on the board the session is set to, which is the classic one until the board command says
+ * otherwise.
+ */
+final class GameSession {
+
+    /**
+     * How long the search for a move may take when the user does not say, in milliseconds
+     */
+    private static final long DEFAULT_BUDGET = 200;
+    /**
+     * The longest time the search for a move may be given, in milliseconds
+     */
+    private static final long MAX_BUDGET = 60000;
+    /**
+     * The most plies perft may count, beyond that it takes far too long for a command
+     */
+    private static final int MAX_PERFT_DEPTH = 7;
+
+    private final String id;
+    private final int[] moves = new int[Move.MAX_MOVES];
+    private Journal journal;
+    private BoardGeometry geometry;
+    private Game game;
+    private volatile long lastAccess;
+    /**
+     * How many turns the game in progress has had, counting every roll
+     */
+    private int turns;
+    /**
+     * How long the engine has spent on the turn in progress so far, only kept while turns are told to anyone
+     */
+    private long turnNanos;
+
+    /**
+     * Creates a session with no game in progress.
+     * @param id the key of the session in its registry
+     */
+    GameSession(String id) {
+        this(id, null, null);
+    }
+
+    /**
+     * Creates a session that picks up where an earlier one left off.
+     * @param id the key of the session in its registry
+     * @param journal where the commands are recorded, null if they are not
+     * @param game the game in progress, null if there is none
+     */
+    GameSession(String id, Journal journal, Game game) {
+        this.id = id;
+        this.journal = journal;
+        this.game = game;
+        geometry = game == null ? BoardGeometry.CLASSIC : game.getGeometry();
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the key of the session in its registry
+     */
+    String getId() {
+        return id;
+    }
+
+    /**
+     * @return the time of the last command that reached this session, in milliseconds since the epoch
+     */
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Launches a new game with the default settings, which is where each player starts with all their pieces at home.
+     * @return "OK" if the game has been started, error message if there already is one in progress
+     */
+    synchronized String startGame() {
+        touch();
+        if (game != null && !game.hasEnded()) {
+            return "Error, there already is a game in progress!";
+        }
+        game = new Game(geometry);
+        if (journal != null) {
+            journal.recordStart(game);
+        }
+        started(false);
+        return "OK";
+    }
+
+    /**
+     * Launches a new game with the custom settings as specified by the user.
+     * @param settings The custom settings as specified by the user.
+     * @return "OK" if a new game has been started, relevant error messages in case something's wrong, which for
+     * invalid settings say why and at which character they went wrong
+     */
+    synchronized String startGame(String settings) {
+        touch();
+        if (game != null && !game.hasEnded()) {
+            return "Error, there already is a game in progress!";
+        }
+        SettingsParser parser = new SettingsParser(geometry);
+        BoardState start = SettingsParser.parseCached(settings, parser);
+        if (start == null) {
+            game = null;
+            return "Error, invalid start settings: " + parser.getError() + " at character "
+                    + (parser.getErrorIndex() + 1) + "!";
+        }
+        game = new Game(start);
+        if (journal != null) {
+            journal.recordStart(game);
+        }
+        started(true);
+        return "OK";
+    }
+
+    /**
+     * Sets the shape of the board the next games are started on, or shows it
+     * @param board the number of players, the path length and the number of pegs, separated by ',', null to show the
+     *              current shape
+     * @return "OK" if the board has been set, the current shape if none was given, error message if there is a game in
+     * progress or there can be no such board
+     */
+    synchronized String setBoard(String board) {
+        touch();
+        if (board == null) {
+            return geometry.toString();
+        } else if (game != null && !game.hasEnded()) {
+            return "Error, there already is a game in progress!";
+        }
+        BoardGeometry parsed = BoardGeometry.parse(board);
+        if (parsed == null) {
+            return "Error, invalid board!";
+        }
+        geometry = parsed;
+        return "OK";
+    }
+
+    /**
+     * Rolls the dice and lists all the possible moves that can be made following that dice roll.
+     * @param roll what the user says the dice roll yielded, {@link CommandLexer#NONE} if it is not a valid roll
+     * @return If there is a game running AND the user has given a valid dice roll, returns the list of all possible
+     * legal moves followed by an indicator that shows who's up. Returns an error message otherwise
+     */
+    synchronized String rollTheDice(int roll) {
+        touch();
+        if (game == null) {
+            return "Error, there is no game in progress!";
+        } else if (roll == CommandLexer.NONE) {
+            return "Error, invalid dice roll!";
+        } else if (game.hasEnded()) {
+            return "Error, the game has ended!";
+        }
+        int player = game.getTurn();
+        char playerChar = Game.getPlayerChar(player);
+        boolean timed = GameEvents.EVENTS.isTurnEnabled();
+        long start = timed ? System.nanoTime() : 0;
+        int count = game.getMoves(roll, moves);
+        turns++;
+        if (timed) {
+            turnNanos = System.nanoTime() - start;
+            if (count == 0) {
+                GameEvents.EVENTS.turn(id, game.getGeometry(), player, roll, 0, Move.NONE, turnNanos);
+            }
+        }
+        if (journal != null) {
+            journal.recordRoll(roll, game);
+        }
+        BoardGeometry board = game.getGeometry();
+        StringBuilder text = new StringBuilder(count * 8 + 8);
+        for (int i = 0; i < count; i++) {
+            board.appendLabel(Move.getFrom(moves[i]), playerChar, text).append('-');
+            board.appendLabel(Move.getTo(moves[i]), playerChar, text).append('\n');
+        }
+        return text.append(Game.getPlayerName(game.getTurn())).toString();
+    }
+
+    /**
+     * Executes a move that the user chose, if there is an unfinished game in progress
+     * @param label the position of the peg to be moved as read by
+     *              {@link CommandLexer#readLabel(CharSequence, int, int)}, {@link CommandLexer#NONE} if the choice does
+     *              not even have the shape of a position
+     * @return error message if the choice is invalid, where the peg has landed and who's up next otherwise
+     */
+    synchronized String timeToMotor(int label) {
+        touch();
+        if (game == null) {
+            return "Error, there is no game in progress!";
+        } else if (game.hasEnded()) {
+            return "Error, the game has ended!";
+        } else if (label == CommandLexer.NONE) {
+            return "Error, invalid move choice!";
+        } else if (!game.isAwaitingMove()) {
+            return "Error, must roll the dice first!";
+        }
+
+        int move = game.findMove(game.getGeometry().parseLabel(label, Game.getPlayerChar(game.getTurn())));
+        if (move == Move.NONE) {
+            return "Error, invalid move choice!";
+        }
+        return play(move);
+    }
+
+    /**
+     * Counts every way the game in progress can go on for a number of dice rolls, see {@link Perft}. The plies below
+     * the first are counted in parallel and the last one in bulk.
+     * @param depth how many dice rolls to count, from 1 to {@link #MAX_PERFT_DEPTH}
+     * @return the counts followed by how fast they were made, or an error message
+     */
+    synchronized String perft(String depth) {
+        touch();
+        if (game == null) {
+            return "Error, there is no game in progress!";
+        } else if (game.hasEnded()) {
+            return "Error, the game has ended!";
+        } else if (depth.length() != 1 || depth.charAt(0) < '1' || depth.charAt(0) > '0' + MAX_PERFT_DEPTH) {
+            return "Error, invalid depth!";
+        }
+        return Perft.count(game, depth.charAt(0) - '0', true, true).toString();
+    }
+
+    /**
+     * Searches for the best of the possible moves after a dice roll, without making it
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return the move written the way the list of possible moves writes it, followed by how deep the search went and
+     * how fast it was, or an error message
+     */
+    synchronized String suggestMove(String budget) {
+        touch();
+        String error = checkSearch(budget);
+        if (error != null) {
+            return error;
+        }
+        Expectimax search = Expectimax.withDefaults();
+        int move = search.search(game, budget == null ? DEFAULT_BUDGET : parseBudget(budget));
+        char playerChar = Game.getPlayerChar(game.getTurn());
+        BoardGeometry board = game.getGeometry();
+        return board.getLabel(Move.getFrom(move), playerChar) + "-" + board.getLabel(Move.getTo(move), playerChar)
+                + "\ndepth " + search.getDepth() + ", " + search.getNodes() + " nodes, "
+                + Math.round(search.getNodesPerSecond()) + " nodes/s";
+    }
+
+    /**
+     * Searches for the best of the possible moves after a dice roll and makes it
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return where the peg has landed and who's up next, just like a move the user chose, or an error message
+     */
+    synchronized String autoMove(String budget) {
+        touch();
+        String error = checkSearch(budget);
+        if (error != null) {
+            return error;
+        }
+        return play(Expectimax.withDefaults().search(game, budget == null ? DEFAULT_BUDGET : parseBudget(budget)));
+    }
+
+    /**
+     * Makes one of the possible moves
+     * @param move the encoded move
+     * @return where the peg has landed and who's up next
+     */
+    private String play(int move) {
+        int player = game.getTurn();
+        char playerChar = Game.getPlayerChar(player);
+        if (GameEvents.EVENTS.isTurnEnabled()) {
+            int roll = game.getState().getRoll();
+            int legalMoves = game.getPossibleMoves(moves);
+            long start = System.nanoTime();
+            game.executeMove(move);
+            GameEvents.EVENTS.turn(id, game.getGeometry(), player, roll, legalMoves, move,
+                    turnNanos + System.nanoTime() - start);
+        } else {
+            game.executeMove(move);
+        }
+        int next = game.getTurn();
+        if (journal != null) {
+            journal.recordMove(Move.getFrom(move), game);
+        }
+        String target = game.getGeometry().getLabel(Move.getTo(move), playerChar) + "\n";
+        if (game.hasEnded()) {
+            GameEvents.EVENTS.gameEnded(id, next, turns);
+            return target + Game.getPlayerName(next) + " winner";
+        }
+        return target + Game.getPlayerName(next);
+    }
+
+    /**
+     * Checks whether a move can be searched for
+     * @param budget how long the search may take in milliseconds, null for the default
+     * @return the error message if it can't, null if it can
+     */
+    private String checkSearch(String budget) {
+        if (game == null) {
+            return "Error, there is no game in progress!";
+        } else if (game.hasEnded()) {
+            return "Error, the game has ended!";
+        } else if (budget != null && parseBudget(budget) < 0) {
+            return "Error, invalid time budget!";
+        } else if (!game.isAwaitingMove()) {
+            return "Error, must roll the dice first!";
+        }
+        return null;
+    }
+
+    /**
+     * Reads a time budget, a whole number of milliseconds from 1 up to {@link #MAX_BUDGET}
+     * @param budget the budget as given by the user
+     * @return the budget in milliseconds, -1 if it is not valid
+     */
+    private static long parseBudget(String budget) {
+        if (budget.isEmpty()) {
+            return -1;
+        }
+        long millis = 0;
+        for (int i = 0; i < budget.length(); i++) {
+            char digit = budget.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            millis = millis * 10 + (digit - '0');
+            if (millis > MAX_BUDGET) {
+                return -1;
+            }
+        }
+        return millis == 0 ? -1 : millis;
+    }
+
+    /**
+     * Ends the game in progress, if there is one.
+     */
+    synchronized void resetGame() {
+        touch();
+        if (journal != null && game != null) {
+            journal.recordReset();
+        }
+        if (game != null && !game.hasEnded()) {
+            GameEvents.EVENTS.gameEnded(id, -1, turns);
+        }
+        game = null;
+    }
+
+    /**
+     * Starts counting the turns of a game that has just started, and tells about it
+     * @param custom true if it started from custom settings, false if from the default ones
+     */
+    private void started(boolean custom) {
+        turns = 0;
+        GameEvents.EVENTS.gameStarted(id, geometry, custom);
+    }
+
+    /**
+     * Writes out whatever the journal has not written yet
+     * @throws IOException if writing fails
+     */
+    synchronized void flush() throws IOException {
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    /**
+     * Closes the journal. The game stays where it is in the journal, so a new session with the same id picks it up
+     * again. Commands that still reach this session afterwards are no longer recorded.
+     * @throws IOException if writing fails
+     */
+    synchronized void close() throws IOException {
+        if (journal != null) {
+            Journal closing = journal;
+            journal = null;
+            closing.close();
+        }
+    }
+
+    /**
+     * @return the game in progress, null if there is none
+     */
+    synchronized Game getGame() {
+        return game;
+    }
+
+    @Override
+    public synchronized String toString() {
+        touch();
+        if (game == null) {
+            return "Error, there is no game in progress!";
+        }
+        return game.toString();
+    }
+
+    /**
+     * Remembers that the session has just been used.
+     */
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
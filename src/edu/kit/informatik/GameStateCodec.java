@@ -0,0 +1,354 @@
+package edu.kit.informatik;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns games into bytes or text and back again, without any strings in between.
+ * The binary form is {@link #getBinaryBytes(BoardGeometry)} bytes long, three bytes per player and one more on the
+ * classic board. Each player's pegs take one location each, with just enough bits for every location code of the
+ * board: 0 for home, otherwise the location code plus one, homes first and the rest in the order of their codes. The
+ * last byte holds the player who is up, whether they get another roll, whether a move is waited for and the last roll.
+ * The shape of the board is not part of the binary form, whoever reads it has to know it.
+ * The text forms are the one the print command shows and the one the start command takes. They are written into a
+ * {@link StringBuilder} or straight into a {@link ByteBuffer} as ASCII, and read by {@link SettingsParser}.
+ * Reading what has been written gives back exactly what was written, in every form.
+ */
+final class GameStateCodec {
+
+    private static final int TURN_MASK = 7;
+    private static final int EXTRA_ROLL = 8;
+    private static final int AWAITING_MOVE = 16;
+    private static final int ROLL_SHIFT = 5;
+
+    /**
+     * Where the characters of the text forms go
+     */
+    private interface Sink {
+        /**
+         * @param c the next character, always ASCII
+         */
+        void put(char c);
+    }
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private GameStateCodec() {
+
+    }
+
+    /**
+     * @param geometry the shape of the board
+     * @return how many bytes the binary form of a game on such a board takes
+     */
+    static int getBinaryBytes(BoardGeometry geometry) {
+        return geometry.getPlayers() * getPlayerBytes(geometry) + 1;
+    }
+
+    /**
+     * Writes the binary form of a game
+     * @param game the game
+     * @param out where the bytes go, needs room for {@link #getBinaryBytes(BoardGeometry)} bytes
+     */
+    static void writeBinary(Game game, ByteBuffer out) {
+        BoardState state = game.getState();
+        BoardGeometry geometry = state.getGeometry();
+        int bitsPerPeg = getBitsPerPeg(geometry);
+        int playerBytes = getPlayerBytes(geometry);
+        for (int player = 0; player < state.getNumberOfPlayers(); player++) {
+            long packed = 0;
+            int shift = bitsPerPeg * geometry.getPegs();
+            for (int i = state.getHomeCount(player); i > 0; i--) {
+                shift -= bitsPerPeg;
+            }
+            for (long pegs = state.getPegs(player); pegs != 0; pegs &= pegs - 1) {
+                shift -= bitsPerPeg;
+                packed |= (long) (Long.numberOfTrailingZeros(pegs) + 1) << shift;
+            }
+            for (int i = playerBytes - 1; i >= 0; i--) {
+                out.put((byte) (packed >>> (i * Byte.SIZE)));
+            }
+        }
+        out.put((byte) (state.getTurn() | (state.hasExtraRoll() ? EXTRA_ROLL : 0)
+                | (game.isAwaitingMove() ? AWAITING_MOVE : 0) | state.getRoll() << ROLL_SHIFT));
+    }
+
+    /**
+     * Reads the binary form of a game
+     * @param geometry the shape of the board the game was played on
+     * @param in where the bytes come from, {@link #getBinaryBytes(BoardGeometry)} of them are read
+     * @return the game, null if the bytes do not describe one
+     */
+    static Game readBinary(BoardGeometry geometry, ByteBuffer in) {
+        BoardState state = new BoardState(geometry);
+        int bitsPerPeg = getBitsPerPeg(geometry);
+        int pegMask = (1 << bitsPerPeg) - 1;
+        int playerBytes = getPlayerBytes(geometry);
+        boolean valid = true;
+        for (int player = 0; player < state.getNumberOfPlayers(); player++) {
+            long packed = 0;
+            for (int i = 0; i < playerBytes; i++) {
+                packed = packed << Byte.SIZE | in.get() & 0xFF;
+            }
+            for (int peg = 0; peg < geometry.getPegs(); peg++, packed >>>= bitsPerPeg) {
+                int location = (int) (packed & pegMask) - 1;
+                if (location == Peg.HOME) {
+                    continue;
+                }
+                valid &= location < geometry.getLocations()
+                        && (geometry.hasArrived(location) ? !state.isAt(player, location)
+                        : state.getOccupant(location) == -1);
+                if (valid) {
+                    state.place(player, location);
+                }
+            }
+        }
+        int flags = in.get() & 0xFF;
+        int turn = flags & TURN_MASK;
+        int roll = flags >>> ROLL_SHIFT;
+        if (!valid || turn >= state.getNumberOfPlayers() || roll > 6) {
+            return null;
+        }
+        state.setTurn(turn);
+        state.setRoll(roll);
+        state.setExtraRoll((flags & EXTRA_ROLL) != 0);
+        Game game = new Game(state);
+        // a roll that is waiting for a move has used up any extra roll, and has to have moves to wait for
+        if ((flags & AWAITING_MOVE) != 0 && (state.hasExtraRoll() || game.hasEnded() || roll == 0
+                || game.getMoves(roll, new int[Move.MAX_MOVES]) == 0)) {
+            return null;
+        }
+        return game;
+    }
+
+    /**
+     * @param geometry the shape of a board
+     * @return how many bits a location takes in the binary form: enough for every location code plus one
+     */
+    private static int getBitsPerPeg(BoardGeometry geometry) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(geometry.getLocations());
+    }
+
+    /**
+     * @param geometry the shape of a board
+     * @return how many bytes a player's pegs take in the binary form
+     */
+    private static int getPlayerBytes(BoardGeometry geometry) {
+        return (getBitsPerPeg(geometry) * geometry.getPegs() + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * Writes the line the print command shows for a player
+     * @param state the board
+     * @param player the player's id
+     * @param out where the text goes
+     * @return the builder, for chaining
+     */
+    static StringBuilder appendPlayer(BoardState state, int player, StringBuilder out) {
+        writePlayer(state, player, out::append);
+        return out;
+    }
+
+    /**
+     * Writes the board the way the print command shows it
+     * @param state the board
+     * @param out where the text goes
+     * @return the builder, for chaining
+     */
+    static StringBuilder appendPrint(BoardState state, StringBuilder out) {
+        writePrint(state, out::append);
+        return out;
+    }
+
+    /**
+     * Writes the board the way the print command shows it, as ASCII bytes
+     * @param state the board
+     * @param out where the bytes go
+     */
+    static void writePrint(BoardState state, ByteBuffer out) {
+        writePrint(state, c -> out.put((byte) c));
+    }
+
+    /**
+     * Writes the start settings that start a game from the board
+     * @param state the board
+     * @param out where the text goes
+     * @return the builder, for chaining
+     */
+    static StringBuilder appendSettings(BoardState state, StringBuilder out) {
+        writeSettings(state, out::append);
+        return out;
+    }
+
+    /**
+     * Writes the start settings that start a game from the board, as ASCII bytes
+     * @param state the board
+     * @param out where the bytes go
+     */
+    static void writeSettings(BoardState state, ByteBuffer out) {
+        writeSettings(state, c -> out.put((byte) c));
+    }
+
+    /**
+     * Reads a board in the format the print command shows it
+     * @param geometry the shape of the board
+     * @param text the printed board
+     * @return the board, null if the text is not a printed board
+     */
+    static BoardState readPrint(BoardGeometry geometry, CharSequence text) {
+        return new SettingsParser(geometry).parsePrint(text);
+    }
+
+    /**
+     * Reads a board in the format the print command shows it, from ASCII bytes
+     * @param geometry the shape of the board
+     * @param in the bytes of the printed board, all of the remaining ones are read
+     * @return the board, null if the bytes are not a printed board
+     */
+    static BoardState readPrint(BoardGeometry geometry, ByteBuffer in) {
+        BoardState state = readPrint(geometry, new AsciiSequence(in));
+        in.position(in.limit());
+        return state;
+    }
+
+    /**
+     * Reads start settings
+     * @param geometry the shape of the board
+     * @param text the settings
+     * @return the board, null if the settings are invalid
+     */
+    static BoardState readSettings(BoardGeometry geometry, CharSequence text) {
+        return new SettingsParser(geometry).parse(text);
+    }
+
+    /**
+     * Reads start settings from ASCII bytes
+     * @param geometry the shape of the board
+     * @param in the bytes of the settings, all of the remaining ones are read
+     * @return the board, null if the settings are invalid
+     */
+    static BoardState readSettings(BoardGeometry geometry, ByteBuffer in) {
+        BoardState state = readSettings(geometry, new AsciiSequence(in));
+        in.position(in.limit());
+        return state;
+    }
+
+    /**
+     * Writes every player's line, then the name of the player who is up
+     * @param state the board
+     * @param out where the text goes
+     */
+    private static void writePrint(BoardState state, Sink out) {
+        for (int player = 0; player < state.getNumberOfPlayers(); player++) {
+            writePlayer(state, player, out);
+            out.put('\n');
+        }
+        String name = Game.getPlayerName(state.getTurn());
+        for (int i = 0; i < name.length(); i++) {
+            out.put(name.charAt(i));
+        }
+    }
+
+    /**
+     * Writes every player's positions, separated by ';'
+     * @param state the board
+     * @param out where the text goes
+     */
+    private static void writeSettings(BoardState state, Sink out) {
+        for (int player = 0; player < state.getNumberOfPlayers(); player++) {
+            if (player > 0) {
+                out.put(';');
+            }
+            writePlayer(state, player, out);
+        }
+    }
+
+    /**
+     * Writes the positions of a player's pegs, separated by ','. The pegs are listed home first, then by their square
+     * on the gameBoard, then by their spot in the end area, which is exactly the order of the bits in the board state.
+     * @param state the board
+     * @param player the player's id
+     * @param out where the text goes
+     */
+    private static void writePlayer(BoardState state, int player, Sink out) {
+        BoardGeometry geometry = state.getGeometry();
+        char playerChar = Game.getPlayerChar(player);
+        boolean first = true;
+        for (int i = state.getHomeCount(player); i > 0; i--) {
+            if (!first) {
+                out.put(',');
+            }
+            first = false;
+            out.put('S');
+            out.put(playerChar);
+        }
+        for (long pegs = state.getPegs(player); pegs != 0; pegs &= pegs - 1) {
+            if (!first) {
+                out.put(',');
+            }
+            first = false;
+            int location = Long.numberOfTrailingZeros(pegs);
+            if (geometry.hasArrived(location)) {
+                out.put((char) ('A' + geometry.getEndSpot(location)));
+                out.put(playerChar);
+            } else {
+                if (location >= 10) {
+                    out.put((char) ('0' + location / 10));
+                }
+                out.put((char) ('0' + location % 10));
+            }
+        }
+    }
+
+    /**
+     * The remaining bytes of a buffer seen as ASCII characters, without copying them
+     */
+    private static final class AsciiSequence implements CharSequence {
+
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        /**
+         * @param bytes the buffer, the characters are the bytes from its position up to its limit
+         */
+        private AsciiSequence(ByteBuffer bytes) {
+            this(bytes, bytes.position(), bytes.remaining());
+        }
+
+        /**
+         * @param bytes the buffer
+         * @param offset the index of the first byte
+         * @param length how many bytes
+         */
+        private AsciiSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,899 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A file of finished games (see {@link GameRecord}), all on boards of one shape, kept by column rather than by game so
+ * that millions of them take little room and questions about them are answered by reading only what they need.
+ * The games are split into blocks of {@link #BLOCK_GAMES}. A block holds every {@link Column} of its games one after
+ * the other, first the columns with one value per game, then those with one value per turn of all its games in order.
+ * Each column of a block is bit-packed: a value is stored as its distance from the smallest value of the column in
+ * that block, in just as many bits as the distance to the largest one needs, so a column whose values hardly vary
+ * takes a few bits per value, and one that doesn't vary at all takes none. Start settings are stored once each, in a
+ * dictionary, and the games only refer to them by their number.
+ * The file starts with a header that holds the shape of the board. After the blocks comes the footer: the dictionary,
+ * then for every block where it starts, how many games and turns it has, and the smallest and largest value of each of
+ * its columns. A query compares these with what it asks for and skips every block that cannot have a game it wants
+ * without reading it. The file ends with where the footer starts, so a file that was never closed is recognized as
+ * such. The blocks are mapped into memory and scanned by several threads at once.
+ */
+final class GameStore implements AutoCloseable {
+
+    /**
+     * What is stored about every game or every turn
+     */
+    enum Column {
+        /**
+         * The number of the game's start settings in the dictionary
+         */
+        SETTINGS(false),
+        /**
+         * The id of the winner, -1 if the game was given up on
+         */
+        WINNER(false),
+        /**
+         * How many times the dice was rolled
+         */
+        TURNS(false),
+        /**
+         * How many turns it took until the first peg was sent home, 0 if none ever was
+         */
+        FIRST_CAPTURE(false),
+        /**
+         * How many pegs were sent home
+         */
+        CAPTURES(false),
+        /**
+         * The number the dice showed
+         */
+        ROLL(true),
+        /**
+         * Which peg was moved, see {@link GameRecord#getMove(int)}
+         */
+        MOVE(true),
+        /**
+         * Whose peg was sent home, -1 if nobody's
+         */
+        CAPTURED(true);
+
+        private final boolean perTurn;
+
+        /**
+         * @param perTurn true if there is a value for every turn, false if for every game
+         */
+        Column(boolean perTurn) {
+            this.perTurn = perTurn;
+        }
+    }
+
+    /**
+     * How many games a block holds, only the last one may have fewer
+     */
+    static final int BLOCK_GAMES = 1 << 12;
+
+    /**
+     * The first bytes and the last bytes of a store, "MADNS" and a format version
+     */
+    private static final long MAGIC = 0x4D41444E53000001L;
+    /**
+     * The magic number and the shape of the board, padded to 8 bytes
+     */
+    private static final int HEADER_BYTES = 2 * Long.BYTES;
+    /**
+     * Where the footer starts and the magic number
+     */
+    private static final int TRAILER_BYTES = 2 * Long.BYTES;
+    private static final Column[] COLUMNS = Column.values();
+    private static final int GAME_COLUMNS = Column.ROLL.ordinal();
+
+    private final FileChannel channel;
+    private final BoardGeometry geometry;
+    private final Map<String, Integer> settingsIds = new HashMap<>();
+    private final Block[] blocks;
+    private final long games;
+
+    /**
+     * Opens a store for reading
+     * @param channel the file
+     * @param geometry the shape of the board of its games
+     * @param settings the dictionary of start settings
+     * @param blocks the blocks, with their data mapped
+     */
+    private GameStore(FileChannel channel, BoardGeometry geometry, List<String> settings, Block[] blocks) {
+        this.channel = channel;
+        this.geometry = geometry;
+        this.blocks = blocks;
+        for (int i = 0; i < settings.size(); i++) {
+            settingsIds.put(settings.get(i), i);
+        }
+        long count = 0;
+        for (Block block : blocks) {
+            count += block.games;
+        }
+        games = count;
+    }
+
+    /**
+     * Creates a new store, replacing any file that is already there. The store can only be read once the writer has
+     * been closed.
+     * @param file the file
+     * @param geometry the shape of the board all games in the store are played on
+     * @return the writer
+     * @throws IOException if the file can't be created
+     */
+    static Writer create(Path file, BoardGeometry geometry) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(MAGIC).put((byte) geometry.getPlayers())
+                    .put((byte) geometry.getPathLength()).put((byte) geometry.getPegs());
+            header.clear();
+            writeFully(channel, header);
+            return new Writer(channel, geometry);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a store and maps its blocks into memory
+     * @param file the file
+     * @return the store
+     * @throws IOException if the file can't be read, is not a store or was never closed
+     */
+    static GameStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES || readFully(channel, 0, Long.BYTES).getLong() != MAGIC) {
+                throw new IOException("not a game store: " + file);
+            }
+            ByteBuffer header = readFully(channel, Long.BYTES, 3);
+            BoardGeometry geometry = BoardGeometry.of(header.get(), header.get(), header.get());
+            if (geometry == null) {
+                throw new IOException("game store is for a board that can't exist: " + file);
+            }
+            ByteBuffer trailer = readFully(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long footerStart = trailer.getLong();
+            if (trailer.getLong() != MAGIC || footerStart < HEADER_BYTES || footerStart > size - TRAILER_BYTES) {
+                throw new IOException("game store was never closed: " + file);
+            }
+
+            ByteBuffer footer = readFully(channel, footerStart, (int) (size - TRAILER_BYTES - footerStart));
+            List<String> settings = new ArrayList<>();
+            for (int i = footer.getInt(); i > 0; i--) {
+                byte[] text = new byte[footer.getShort() & 0xFFFF];
+                footer.get(text);
+                settings.add(new String(text, StandardCharsets.US_ASCII));
+            }
+            Block[] blocks = new Block[footer.getInt()];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = Block.read(footer);
+                if (blocks[i].offset + blocks[i].getBytes() > footerStart) {
+                    throw new IOException("game store block " + i + " reaches past the footer: " + file);
+                }
+                blocks[i].data = channel.map(FileChannel.MapMode.READ_ONLY, blocks[i].offset, blocks[i].getBytes());
+            }
+            return new GameStore(channel, geometry, settings, blocks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the shape of the board all games in the store are played on
+     */
+    BoardGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return how many games the store holds
+     */
+    long getGames() {
+        return games;
+    }
+
+    /**
+     * @return how many blocks the games are split into
+     */
+    int getBlocks() {
+        return blocks.length;
+    }
+
+    /**
+     * @return a query for every game in the store, to be narrowed down
+     */
+    Query query() {
+        return new Query();
+    }
+
+    /**
+     * Closes the file. The mapped blocks stay readable until they are no longer used.
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Counts what a query asks for in one block
+     * @param block the block
+     * @param query the query
+     * @param values room for the decoded values of every column, grown as needed
+     * @param result where the counts go
+     */
+    private static void scan(Block block, Query query, long[][] values, Result result) {
+        for (int c = 0; c < GAME_COLUMNS; c++) {
+            if (query.high[c] < block.min[c] || query.low[c] > block.max[c]) {
+                result.skippedBlocks++;
+                return;
+            }
+        }
+        result.scannedBlocks++;
+        int columns = query.turns ? COLUMNS.length : GAME_COLUMNS;
+        for (int c = 0, offset = 0; c < COLUMNS.length; offset += block.getBytes(c), c++) {
+            if (c < columns) {
+                int count = COLUMNS[c].perTurn ? block.turns : block.games;
+                if (values[c].length < count) {
+                    values[c] = new long[Math.max(count, values[c].length * 2)];
+                }
+                unpack(block.data, offset, count, block.min[c], block.width[c], values[c]);
+            }
+        }
+
+        int turn = 0;
+        for (int g = 0; g < block.games; g++) {
+            int turns = (int) values[Column.TURNS.ordinal()][g];
+            boolean match = true;
+            for (int c = 0; c < GAME_COLUMNS && match; c++) {
+                match = values[c][g] >= query.low[c] && values[c][g] <= query.high[c];
+            }
+            if (match) {
+                result.add(values, g, turn, query.turns ? turns : 0);
+            }
+            turn += turns;
+        }
+    }
+
+    /**
+     * Writes the values of a column bit-packed, each as its distance from the smallest one
+     * @param values the values
+     * @param count how many values there are
+     * @param min the smallest value
+     * @param width how many bits each value takes
+     * @param out where the packed longs go
+     */
+    private static void pack(long[] values, int count, long min, int width, ByteBuffer out) {
+        if (width == 0) {
+            return;
+        }
+        long word = 0;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i] - min;
+            word |= value << used;
+            used += width;
+            if (used >= Long.SIZE) {
+                out.putLong(word);
+                used -= Long.SIZE;
+                // the bits of the value that did not fit go first into the next long
+                word = used == 0 ? 0 : value >>> (width - used);
+            }
+        }
+        if (used > 0) {
+            out.putLong(word);
+        }
+    }
+
+    /**
+     * Reads the values of a bit-packed column, see {@link #pack(long[], int, long, int, ByteBuffer)}
+     * @param data the block
+     * @param offset where the column starts in the block
+     * @param count how many values there are
+     * @param min the smallest value
+     * @param width how many bits each value takes
+     * @param values where the values go
+     */
+    private static void unpack(ByteBuffer data, int offset, int count, long min, int width, long[] values) {
+        if (width == 0) {
+            Arrays.fill(values, 0, count, min);
+            return;
+        }
+        long mask = width == Long.SIZE ? -1L : (1L << width) - 1;
+        long bit = 0;
+        for (int i = 0; i < count; i++, bit += width) {
+            int at = offset + (int) (bit >>> 6) * Long.BYTES;
+            int shift = (int) bit & (Long.SIZE - 1);
+            long value = data.getLong(at) >>> shift;
+            if (shift + width > Long.SIZE) {
+                value |= data.getLong(at + Long.BYTES) << (Long.SIZE - shift);
+            }
+            values[i] = (value & mask) + min;
+        }
+    }
+
+    /**
+     * Reads a number of bytes from a position of a file
+     * @param channel the file
+     * @param position where reading starts
+     * @param bytes how many bytes to read
+     * @return the bytes, ready to be read
+     * @throws IOException if reading fails or the file ends too early
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        long at = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new IOException("game store ends too early");
+            }
+            at += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Appends a whole buffer to a file
+     * @param channel the file, positioned at its end
+     * @param buffer the bytes
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Answers a few questions about the games of a store: win rates and averages, over all games or the ones with
+     * given start settings.
+     * @param args the file of the store, optionally followed by the start settings the games are to start from
+     * @throws IOException if the store can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        try (GameStore store = open(Paths.get(args[0]))) {
+            Query all = store.query().withTurns();
+            Query captured = store.query().where(Column.FIRST_CAPTURE, 1, Long.MAX_VALUE);
+            if (args.length > 1) {
+                all.settings(args[1]);
+                captured.settings(args[1]);
+            }
+            Terminal.printLine(store.getGames() + " games in " + store.getBlocks() + " blocks on a " + store.geometry
+                    + " board");
+            Terminal.printLine(all.run(workers));
+            Result firstCapture = captured.run(workers);
+            Terminal.printLine(String.format(Locale.ROOT, "turns until the first capture %.1f, in %d games",
+                    firstCapture.getAverage(Column.FIRST_CAPTURE), firstCapture.getGames()));
+        }
+    }
+
+    /**
+     * Where a block is in the file, how much is in it, and the smallest and largest value and the number of bits of
+     * every one of its columns
+     */
+    private static final class Block {
+
+        private final long[] min = new long[COLUMNS.length];
+        private final long[] max = new long[COLUMNS.length];
+        private final int[] width = new int[COLUMNS.length];
+        private long offset;
+        private int games;
+        private int turns;
+        private ByteBuffer data;
+
+        /**
+         * Reads a block's entry in the footer
+         * @param footer the footer, positioned at the entry
+         * @return the block, without its data
+         * @throws IOException if the entry is broken
+         */
+        private static Block read(ByteBuffer footer) throws IOException {
+            Block block = new Block();
+            block.offset = footer.getLong();
+            block.games = footer.getInt();
+            block.turns = footer.getInt();
+            for (int c = 0; c < COLUMNS.length; c++) {
+                block.min[c] = footer.getLong();
+                block.max[c] = footer.getLong();
+                block.width[c] = footer.getInt();
+                if (block.width[c] < 0 || block.width[c] > Long.SIZE || block.min[c] > block.max[c]) {
+                    throw new IOException("game store footer is broken");
+                }
+            }
+            if (block.games < 0 || block.turns < 0 || block.getBytes() > Integer.MAX_VALUE) {
+                throw new IOException("game store footer is broken");
+            }
+            return block;
+        }
+
+        /**
+         * Writes the block's entry in the footer
+         * @param footer where the entry goes
+         */
+        private void write(ByteBuffer footer) {
+            footer.putLong(offset).putInt(games).putInt(turns);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                footer.putLong(min[c]).putLong(max[c]).putInt(width[c]);
+            }
+        }
+
+        /**
+         * @return how long an entry in the footer is
+         */
+        private static int getEntryBytes() {
+            return Long.BYTES + 2 * Integer.BYTES + COLUMNS.length * (2 * Long.BYTES + Integer.BYTES);
+        }
+
+        /**
+         * @param column the index of a column
+         * @return how many bytes the column takes in the block
+         */
+        private long getBytes(int column) {
+            long count = COLUMNS[column].perTurn ? turns : games;
+            return (count * width[column] + Long.SIZE - 1) / Long.SIZE * Long.BYTES;
+        }
+
+        /**
+         * @return how many bytes the block takes
+         */
+        private long getBytes() {
+            long bytes = 0;
+            for (int c = 0; c < COLUMNS.length; c++) {
+                bytes += getBytes(c);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Collects games and writes them into a new store a block at a time. Games can be added from any number of
+     * threads.
+     */
+    static final class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final BoardGeometry geometry;
+        private final Map<String, Integer> settingsIds = new HashMap<>();
+        private final List<String> settings = new ArrayList<>();
+        private final List<Block> blocks = new ArrayList<>();
+        private final long[][] values = new long[COLUMNS.length][];
+        private long offset = HEADER_BYTES;
+        private int games;
+        private int turns;
+
+        /**
+         * Creates a writer on a new file
+         * @param channel the file, positioned after the header
+         * @param geometry the shape of the board all games are played on
+         */
+        private Writer(FileChannel channel, BoardGeometry geometry) {
+            this.channel = channel;
+            this.geometry = geometry;
+            for (int c = 0; c < COLUMNS.length; c++) {
+                values[c] = new long[BLOCK_GAMES];
+            }
+        }
+
+        /**
+         * Adds a finished or given up game
+         * @param record the game
+         * @throws IOException if writing a full block fails
+         */
+        synchronized void append(GameRecord record) throws IOException {
+            Integer id = settingsIds.get(record.getSettings());
+            if (id == null) {
+                id = settings.size();
+                settingsIds.put(record.getSettings(), id);
+                settings.add(record.getSettings());
+            }
+            values[Column.SETTINGS.ordinal()][games] = id;
+            values[Column.WINNER.ordinal()][games] = record.getWinner();
+            values[Column.TURNS.ordinal()][games] = record.getTurns();
+            values[Column.FIRST_CAPTURE.ordinal()][games] = record.getFirstCapture();
+            values[Column.CAPTURES.ordinal()][games] = record.getCaptures();
+            games++;
+
+            if (values[Column.ROLL.ordinal()].length < turns + record.getTurns()) {
+                for (int c = GAME_COLUMNS; c < COLUMNS.length; c++) {
+                    values[c] = Arrays.copyOf(values[c], Math.max(turns + record.getTurns(), values[c].length * 2));
+                }
+            }
+            for (int t = 0; t < record.getTurns(); t++, turns++) {
+                values[Column.ROLL.ordinal()][turns] = record.getRoll(t);
+                values[Column.MOVE.ordinal()][turns] = record.getMove(t);
+                values[Column.CAPTURED.ordinal()][turns] = record.getCaptured(t);
+            }
+
+            if (games == BLOCK_GAMES) {
+                writeBlock();
+            }
+        }
+
+        /**
+         * Packs the games that have been collected into a block and writes it
+         * @throws IOException if writing fails
+         */
+        private void writeBlock() throws IOException {
+            Block block = new Block();
+            block.offset = offset;
+            block.games = games;
+            block.turns = turns;
+            for (int c = 0; c < COLUMNS.length; c++) {
+                int count = COLUMNS[c].perTurn ? turns : games;
+                long min = 0;
+                long max = 0;
+                for (int i = 0; i < count; i++) {
+                    min = i == 0 ? values[c][i] : Math.min(min, values[c][i]);
+                    max = i == 0 ? values[c][i] : Math.max(max, values[c][i]);
+                }
+                block.min[c] = min;
+                block.max[c] = max;
+                block.width[c] = Long.SIZE - Long.numberOfLeadingZeros(max - min);
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) block.getBytes());
+            for (int c = 0; c < COLUMNS.length; c++) {
+                pack(values[c], COLUMNS[c].perTurn ? turns : games, block.min[c], block.width[c], data);
+            }
+            data.flip();
+            writeFully(channel, data);
+            offset += block.getBytes();
+            blocks.add(block);
+            games = 0;
+            turns = 0;
+        }
+
+        /**
+         * Writes the last block and the footer and closes the file
+         * @throws IOException if writing fails
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                if (games > 0) {
+                    writeBlock();
+                }
+                int bytes = 2 * Integer.BYTES + blocks.size() * Block.getEntryBytes() + TRAILER_BYTES;
+                for (String text : settings) {
+                    bytes += Short.BYTES + text.length();
+                }
+                ByteBuffer footer = ByteBuffer.allocate(bytes).putInt(settings.size());
+                for (String text : settings) {
+                    footer.putShort((short) text.length()).put(text.getBytes(StandardCharsets.US_ASCII));
+                }
+                footer.putInt(blocks.size());
+                for (Block block : blocks) {
+                    block.write(footer);
+                }
+                footer.putLong(offset).putLong(MAGIC);
+                footer.flip();
+                writeFully(channel, footer);
+            } finally {
+                channel.close();
+            }
+        }
+
+        /**
+         * @return the shape of the board all games are played on
+         */
+        BoardGeometry getGeometry() {
+            return geometry;
+        }
+    }
+
+    /**
+     * Which games of the store are counted: those whose game columns lie in given ranges, all of them to begin with
+     */
+    final class Query {
+
+        private final long[] low = new long[GAME_COLUMNS];
+        private final long[] high = new long[GAME_COLUMNS];
+        private boolean turns;
+
+        /**
+         * Creates a query for every game
+         */
+        private Query() {
+            Arrays.fill(low, Long.MIN_VALUE);
+            Arrays.fill(high, Long.MAX_VALUE);
+        }
+
+        /**
+         * Only counts the games with a value of a column within a range, on top of what is asked for already
+         * @param column a column with a value for every game
+         * @param from the smallest value that is counted
+         * @param to the largest value that is counted
+         * @return this query, for chaining
+         */
+        Query where(Column column, long from, long to) {
+            if (column.perTurn) {
+                throw new IllegalArgumentException("games can't be picked by a column of turns: " + column);
+            }
+            low[column.ordinal()] = Math.max(low[column.ordinal()], from);
+            high[column.ordinal()] = Math.min(high[column.ordinal()], to);
+            return this;
+        }
+
+        /**
+         * Only counts the games that start from given settings, on top of what is asked for already
+         * @param settings the start settings in the format the start command takes them
+         * @return this query, for chaining
+         */
+        Query settings(String settings) {
+            BoardState start = Game.parseSettings(geometry, settings);
+            if (start == null) {
+                throw new IllegalArgumentException("invalid start settings: " + settings);
+            }
+            Integer id = settingsIds.get(GameStateCodec.appendSettings(start, new StringBuilder()).toString());
+            // no game starts from settings that are not in the dictionary
+            return id == null ? where(Column.SETTINGS, -1, -2) : where(Column.SETTINGS, id, id);
+        }
+
+        /**
+         * Also counts the rolls, passes and captures of every turn of the games, which means reading the columns of
+         * turns as well
+         * @return this query, for chaining
+         */
+        Query withTurns() {
+            turns = true;
+            return this;
+        }
+
+        /**
+         * Scans the blocks that may have games the query asks for, in parallel
+         * @param workers how many blocks are scanned at once
+         * @return the counts
+         */
+        Result run(int workers) {
+            AtomicInteger nextBlock = new AtomicInteger();
+            int threads = Math.max(1, Math.min(workers, blocks.length));
+            List<Callable<Result>> tasks = new ArrayList<>(threads);
+            for (int w = 0; w < threads; w++) {
+                tasks.add(() -> {
+                    Result result = new Result(geometry.getPlayers());
+                    long[][] values = new long[COLUMNS.length][0];
+                    for (int b = nextBlock.getAndIncrement(); b < blocks.length; b = nextBlock.getAndIncrement()) {
+                        scan(blocks[b], this, values, result);
+                    }
+                    return result;
+                });
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+            Result total = new Result(geometry.getPlayers());
+            try {
+                for (Future<Result> result : pool.invokeAll(tasks)) {
+                    total.add(result.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            total.nanos = System.nanoTime() - start;
+            return total;
+        }
+    }
+
+    /**
+     * What a query has counted over the games it asked for
+     */
+    static final class Result {
+
+        private final long[] sums = new long[GAME_COLUMNS];
+        private final long[] wins;
+        private final long[] rolls = new long[7];
+        private final long[] captured;
+        private long games;
+        private long unfinished;
+        private long turns;
+        private long passes;
+        private int scannedBlocks;
+        private int skippedBlocks;
+        private long nanos;
+
+        /**
+         * Creates empty counts
+         * @param players how many players a game has
+         */
+        private Result(int players) {
+            wins = new long[players];
+            captured = new long[players];
+        }
+
+        /**
+         * Counts a game
+         * @param values the decoded columns of its block
+         * @param game the index of the game in the block
+         * @param firstTurn the index of its first turn in the block
+         * @param turnCount how many of its turns are counted, 0 if the query did not ask for them
+         */
+        private void add(long[][] values, int game, int firstTurn, int turnCount) {
+            games++;
+            for (int c = 0; c < GAME_COLUMNS; c++) {
+                sums[c] += values[c][game];
+            }
+            int winner = (int) values[Column.WINNER.ordinal()][game];
+            if (winner < 0) {
+                unfinished++;
+            } else {
+                wins[winner]++;
+            }
+            turns += turnCount;
+            for (int t = firstTurn; t < firstTurn + turnCount; t++) {
+                rolls[(int) values[Column.ROLL.ordinal()][t]]++;
+                if (values[Column.MOVE.ordinal()][t] == GameRecord.PASS) {
+                    passes++;
+                }
+                int victim = (int) values[Column.CAPTURED.ordinal()][t];
+                if (victim >= 0) {
+                    captured[victim]++;
+                }
+            }
+        }
+
+        /**
+         * Adds another result's counts to this one
+         * @param other the other result
+         */
+        private void add(Result other) {
+            for (int c = 0; c < GAME_COLUMNS; c++) {
+                sums[c] += other.sums[c];
+            }
+            for (int i = 0; i < wins.length; i++) {
+                wins[i] += other.wins[i];
+                captured[i] += other.captured[i];
+            }
+            for (int i = 0; i < rolls.length; i++) {
+                rolls[i] += other.rolls[i];
+            }
+            games += other.games;
+            unfinished += other.unfinished;
+            turns += other.turns;
+            passes += other.passes;
+            scannedBlocks += other.scannedBlocks;
+            skippedBlocks += other.skippedBlocks;
+        }
+
+        /**
+         * @return how many games the query asked for
+         */
+        long getGames() {
+            return games;
+        }
+
+        /**
+         * @return how many of them were given up on before anyone won
+         */
+        long getUnfinishedGames() {
+            return unfinished;
+        }
+
+        /**
+         * @param player the player's id
+         * @return how many of the games the player has won
+         */
+        long getWins(int player) {
+            return wins[player];
+        }
+
+        /**
+         * @param player the player's id
+         * @return the share of the finished games the player has won, 0 if there are none
+         */
+        double getWinRate(int player) {
+            return games == unfinished ? 0 : (double) wins[player] / (games - unfinished);
+        }
+
+        /**
+         * @param column a column with a value for every game
+         * @return the mean of its values over the games, 0 if there are none
+         */
+        double getAverage(Column column) {
+            if (column.perTurn) {
+                throw new IllegalArgumentException("only columns of games are summed up: " + column);
+            }
+            return games == 0 ? 0 : (double) sums[column.ordinal()] / games;
+        }
+
+        /**
+         * Only counted if the query asked for the turns
+         * @param roll a number from 1 to 6
+         * @return how many times the dice showed it
+         */
+        long getRolls(int roll) {
+            return rolls[roll];
+        }
+
+        /**
+         * Only counted if the query asked for the turns
+         * @return how many rolls allowed no move
+         */
+        long getPasses() {
+            return passes;
+        }
+
+        /**
+         * Only counted if the query asked for the turns
+         * @param player the player's id
+         * @return how many times one of the player's pegs was sent home
+         */
+        long getCaptured(int player) {
+            return captured[player];
+        }
+
+        /**
+         * @return how many blocks were read
+         */
+        int getScannedBlocks() {
+            return scannedBlocks;
+        }
+
+        /**
+         * @return how many blocks were skipped because their smallest and largest values ruled them out
+         */
+        int getSkippedBlocks() {
+            return skippedBlocks;
+        }
+
+        /**
+         * @return how long the query took, in seconds
+         */
+        double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(getSeconds(), 1e-9);
+            String text = String.format(Locale.ROOT, "%d games, %d blocks read, %d skipped, in %.3f s: %.0f games/s%n",
+                    games, scannedBlocks, skippedBlocks, seconds, games / seconds);
+            for (int i = 0; i < wins.length; i++) {
+                text = text.concat(String.format(Locale.ROOT, "%s wins %.2f%%", Game.getPlayerName(i),
+                        100 * getWinRate(i)));
+                text = text.concat(turns == 0 ? String.format(Locale.ROOT, "%n")
+                        : String.format(Locale.ROOT, ", sent home %d times%n", captured[i]));
+            }
+            if (unfinished > 0) {
+                text = text.concat(String.format(Locale.ROOT, "%d games unfinished%n", unfinished));
+            }
+            text = text.concat(String.format(Locale.ROOT, "turns per game %.1f, captures per game %.2f",
+                    getAverage(Column.TURNS), getAverage(Column.CAPTURES)));
+            if (turns > 0) {
+                text = text.concat(String.format(Locale.ROOT, "%nrolls 1-6:"));
+                for (int roll = 1; roll <= 6; roll++) {
+                    text = text.concat(String.format(Locale.ROOT, " %.2f%%", 100.0 * rolls[roll] / turns));
+                }
+                text = text.concat(String.format(Locale.ROOT, ", passes %.2f%%", 100.0 * passes / turns));
+            }
+            return text;
+        }
+    }
+}
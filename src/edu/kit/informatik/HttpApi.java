@@ -0,0 +1,434 @@
+package edu.kit.informatik;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offers the console's commands as an HTTP API with JSON answers, on the HTTP server that comes with the JDK. Every
+ * game lives in a session whose id is part of the path:
+ * - GET /sessions/{id} shows the game
+ * - POST /sessions/{id}/board?value=players,path,pegs sets the shape of the board the next game starts on
+ * - POST /sessions/{id}/start starts a game, with start settings as the body if there are any
+ * - POST /sessions/{id}/roll?value=n rolls the dice
+ * - POST /sessions/{id}/move?peg=p moves the peg at a position
+ * - POST /sessions/{id}/suggest?budget=ms and /automove?budget=ms search for a move
+ * - POST /sessions/{id}/perft?depth=n counts every way the game can go on for n dice rolls
+ * - DELETE /sessions/{id} ends the session along with its game, if it has been created over HTTP
+ * Every answer is a JSON object with the session id, the console's answer or error message and the game as it is
+ * afterwards. Showing a game answers with an ETag, so clients that poll can ask for it only if it has changed.
+ * Each request runs on a thread of its own. Where the JDK has virtual threads, they are used, otherwise requests run
+ * on a pool of ordinary threads. Sessions that have been created over HTTP and have not been used for a while can be
+ * dropped on a schedule; the sessions of the console and of the TCP server are never dropped.
+ */
+final class HttpApi implements AutoCloseable {
+
+    private static final String PREFIX = "/sessions/";
+    private static final int MAX_BODY = 1 << 12;
+
+    private final Controller controller;
+    private final SessionRegistry sessions;
+    /**
+     * The ids of the sessions that have been created by requests, the only ones that are dropped when idle
+     */
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final ScheduledExecutorService janitor;
+
+    /**
+     * Opens the server. Nothing is served before {@link #start()}.
+     * @param controller the controller whose sessions are played
+     * @param address the address to listen on, port 0 for any free port
+     * @param maxIdleMillis how long a session created over HTTP may go without requests before it is dropped, 0 to keep
+     *                      sessions forever
+     * @throws IOException if the server can't be opened
+     */
+    HttpApi(Controller controller, InetSocketAddress address, long maxIdleMillis) throws IOException {
+        this.controller = controller;
+        sessions = controller.getSessions();
+        server = HttpServer.create(address, 1024);
+        requests = threadPerRequest();
+        server.setExecutor(requests);
+        server.createContext(PREFIX, this::handle);
+        if (maxIdleMillis > 0) {
+            janitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "http-api-janitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, maxIdleMillis / 4);
+            janitor.scheduleWithFixedDelay(() -> sessions.removeIdle(maxIdleMillis, created), period, period,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            janitor = null;
+        }
+    }
+
+    /**
+     * Creates an executor that runs every task on a virtual thread of its own, or on a cached pool of ordinary threads
+     * if the JDK has no virtual threads. Virtual threads are looked up by reflection, so the code still runs on Java 8.
+     * @return the executor
+     */
+    private static ExecutorService threadPerRequest() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "http-api-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Starts serving requests
+     */
+    void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, giving requests that are running a second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        requests.shutdown();
+        if (janitor != null) {
+            janitor.shutdown();
+        }
+    }
+
+    /**
+     * Answers a single request
+     * @param exchange the request and its answer
+     * @throws IOException if the answer can't be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath().substring(PREFIX.length());
+            int slash = path.indexOf('/');
+            String sessionId = decode(slash < 0 ? path : path.substring(0, slash));
+            String action = slash < 0 ? "" : path.substring(slash + 1);
+            String method = exchange.getRequestMethod();
+            if (sessionId.isEmpty()) {
+                send(exchange, 404, null, error(sessionId, "Error, no session given!"));
+            } else if (action.isEmpty() && method.equals("GET")) {
+                show(exchange, sessionId);
+            } else if (action.isEmpty() && method.equals("DELETE")) {
+                delete(exchange, sessionId);
+            } else if (method.equals("POST")) {
+                command(exchange, sessionId, action);
+            } else {
+                send(exchange, 405, null, error(sessionId, "Error, method not allowed!"));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Ends a session along with its game, if it has been created over HTTP. The sessions of the console and of the TCP
+     * server belong to whoever is using them there.
+     * @param exchange the request and its answer
+     * @param sessionId the id of the session
+     * @throws IOException if the answer can't be sent
+     */
+    private void delete(HttpExchange exchange, String sessionId) throws IOException {
+        if (created.remove(sessionId)) {
+            sessions.remove(sessionId);
+            send(exchange, 200, null, new JsonWriter(new StringBuilder()).beginObject()
+                    .name("session").value(sessionId).endObject().getOutput());
+        } else if (sessions.find(sessionId) != null) {
+            send(exchange, 409, null, error(sessionId, "Error, the session was not created over HTTP!"));
+        } else {
+            send(exchange, 404, null, error(sessionId, "Error, there is no such session!"));
+        }
+    }
+
+    /**
+     * Shows a game, or answers that it has not changed if the client already has the current version
+     * @param exchange the request and its answer
+     * @param sessionId the id of the session
+     * @throws IOException if the answer can't be sent
+     */
+    private void show(HttpExchange exchange, String sessionId) throws IOException {
+        GameSession session = sessions.find(sessionId);
+        if (session == null) {
+            send(exchange, 404, null, error(sessionId, "Error, there is no game in progress!"));
+            return;
+        }
+        StringBuilder body;
+        String tag;
+        synchronized (session) {
+            session.touch();
+            Game game = session.getGame();
+            tag = tag(game);
+            if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                body = null;
+            } else {
+                JsonWriter json = new JsonWriter(new StringBuilder(256)).beginObject();
+                json.name("session").value(sessionId);
+                writeGame(json, game);
+                body = json.endObject().getOutput();
+            }
+        }
+        if (body == null) {
+            exchange.getResponseHeaders().set("ETag", tag);
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            send(exchange, 200, tag, body);
+        }
+    }
+
+    /**
+     * Runs a command in a session
+     * @param exchange the request and its answer
+     * @param sessionId the id of the session
+     * @param action the last part of the path, which names the command
+     * @throws IOException if the request can't be read or the answer can't be sent
+     */
+    private void command(HttpExchange exchange, String sessionId, String action) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        GameSession session = action.equals("start") || action.equals("board") ? sessions.get(sessionId, created)
+                : sessions.find(sessionId);
+        if (session == null) {
+            send(exchange, 404, null, error(sessionId, "Error, there is no game in progress!"));
+            return;
+        }
+        String argument;
+        switch (action) {
+            case "start":
+                argument = readBody(exchange);
+                break;
+            case "board":
+                argument = parameter(query, "value", exchange);
+                break;
+            case "roll":
+                argument = parameter(query, "value", exchange);
+                break;
+            case "move":
+                argument = parameter(query, "peg", exchange);
+                break;
+            case "suggest":
+            case "automove":
+                argument = parameter(query, "budget", null);
+                break;
+            case "perft":
+                argument = parameter(query, "depth", exchange);
+                break;
+            default:
+                send(exchange, 404, null, error(sessionId, "Error, command not recognized!"));
+                return;
+        }
+
+        StringBuilder body;
+        String result;
+        // the controller times the command like it does for the console; holding the session keeps the game that is
+        // shown the one the command left behind
+        synchronized (session) {
+            switch (action) {
+                case "start":
+                    result = controller.startGame(sessionId, argument.isEmpty() ? null : argument);
+                    break;
+                case "board":
+                    result = controller.setBoard(sessionId, argument.isEmpty() ? null : argument);
+                    break;
+                case "roll":
+                    result = controller.rollTheDice(sessionId, argument);
+                    break;
+                case "move":
+                    result = controller.timeToMotor(sessionId, argument);
+                    break;
+                case "suggest":
+                    result = controller.suggestMove(sessionId, argument);
+                    break;
+                case "perft":
+                    result = controller.perft(sessionId, argument);
+                    break;
+                default:
+                    result = controller.autoMove(sessionId, argument);
+                    break;
+            }
+            JsonWriter json = new JsonWriter(new StringBuilder(256)).beginObject();
+            json.name("session").value(sessionId);
+            json.name(result.startsWith("Error") ? "error" : "result").value(result);
+            writeGame(json, session.getGame());
+            body = json.endObject().getOutput();
+        }
+        send(exchange, status(result), null, body);
+    }
+
+    /**
+     * Writes the members that describe a game
+     * @param json where they go, inside an object
+     * @param game the game, null if there is none
+     */
+    private static void writeGame(JsonWriter json, Game game) {
+        json.name("game");
+        if (game == null) {
+            json.value((String) null);
+            return;
+        }
+        BoardState state = game.getState();
+        BoardGeometry geometry = state.getGeometry();
+        json.beginObject().name("board").value(geometry.toString()).name("players").beginArray();
+        for (int player = 0; player < state.getNumberOfPlayers(); player++) {
+            char playerChar = Game.getPlayerChar(player);
+            json.beginObject().name("name").value(Game.getPlayerName(player)).name("pegs").beginArray();
+            for (int i = state.getHomeCount(player); i > 0; i--) {
+                json.value(geometry.getLabel(Peg.HOME, playerChar));
+            }
+            for (long pegs = state.getPegs(player); pegs != 0; pegs &= pegs - 1) {
+                json.value(geometry.getLabel(Long.numberOfTrailingZeros(pegs), playerChar));
+            }
+            json.endArray().endObject();
+        }
+        json.endArray();
+        json.name("turn").value(Game.getPlayerName(state.getTurn()));
+        json.name("ended").value(game.hasEnded());
+        json.name("winner").value(game.hasEnded() ? Game.getPlayerName(state.getTurn()) : null);
+        json.name("moves").beginArray();
+        int[] moves = new int[Move.MAX_MOVES];
+        char playerChar = Game.getPlayerChar(state.getTurn());
+        for (int i = 0, count = game.getPossibleMoves(moves); i < count; i++) {
+            json.beginObject().name("from").value(geometry.getLabel(Move.getFrom(moves[i]), playerChar))
+                    .name("to").value(geometry.getLabel(Move.getTo(moves[i]), playerChar)).endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    /**
+     * Works out a tag that changes whenever the shown game changes
+     * @param game the game, null if there is none
+     * @return the tag, quoted as an ETag is
+     */
+    private static String tag(Game game) {
+        if (game == null) {
+            return "\"none\"";
+        }
+        BoardState state = game.getState();
+        return "\"" + Long.toHexString(state.getHash()) + (game.isAwaitingMove() ? "-" + state.getRoll() : "") + "\"";
+    }
+
+    /**
+     * Picks the status code for a console answer
+     * @param result the console's answer
+     * @return 200 for success, 404 if there is no game, 400 for invalid input and 409 for a command at the wrong time
+     */
+    private static int status(String result) {
+        if (!result.startsWith("Error")) {
+            return 200;
+        } else if (result.contains("no game in progress")) {
+            return 404;
+        } else if (result.contains("invalid")) {
+            return 400;
+        }
+        return 409;
+    }
+
+    /**
+     * Writes an error answer
+     * @param sessionId the id of the session
+     * @param message the error message
+     * @return the JSON
+     */
+    private static StringBuilder error(String sessionId, String message) {
+        return new JsonWriter(new StringBuilder(96)).beginObject().name("session").value(sessionId)
+                .name("error").value(message).endObject().getOutput();
+    }
+
+    /**
+     * Finds a parameter in the query string, or falls back to the body of the request
+     * @param query the raw query string, may be null
+     * @param name the name of the parameter
+     * @param exchange the request whose body is used if the parameter is missing, null for no fallback
+     * @return the value, null if there is none
+     * @throws IOException if the body can't be read
+     */
+    private static String parameter(String query, String name, HttpExchange exchange) throws IOException {
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                    return decode(pair.substring(equals + 1));
+                }
+            }
+        }
+        return exchange == null ? null : readBody(exchange);
+    }
+
+    /**
+     * Reads the body of a request as text, without a line break at its end
+     * @param exchange the request
+     * @return the body, empty if there is none
+     * @throws IOException if it can't be read
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int read; (read = in.read(buffer)) > 0 && body.size() < MAX_BODY;) {
+                body.write(buffer, 0, read);
+            }
+        }
+        String text = new String(body.toByteArray(), StandardCharsets.UTF_8);
+        return text.endsWith("\n") ? text.substring(0, text.length() - (text.endsWith("\r\n") ? 2 : 1)) : text;
+    }
+
+    /**
+     * Decodes a part of a URL
+     * @param raw the part as it is in the URL
+     * @return the decoded text
+     */
+    private static String decode(String raw) {
+        try {
+            return URLDecoder.decode(raw, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return raw;
+        }
+    }
+
+    /**
+     * Sends a JSON answer
+     * @param exchange the request and its answer
+     * @param status the status code
+     * @param tag the ETag, null for none
+     * @param body the JSON
+     * @throws IOException if the answer can't be sent
+     */
+    private static void send(HttpExchange exchange, int status, String tag, CharSequence body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (tag != null) {
+            exchange.getResponseHeaders().set("ETag", tag);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
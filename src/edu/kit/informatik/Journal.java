@@ -0,0 +1,553 @@
+package edu.kit.informatik;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only record of everything that happens in one {@link GameSession}, kept in two files in a journal
+ * directory, so that the session's games survive the program.
+ * The events file holds one event of two bytes per accepted command: a dice roll with its number, a move with the
+ * location of the peg that was moved, the start of a game or its end. The checkpoints file holds a full copy of the
+ * game every {@link #CHECKPOINT_INTERVAL} events and at the start of every game, along with how many events had
+ * happened by then. To get the game as it was after any number of events, the nearest checkpoint before it is loaded
+ * and only the events after that are played again.
+ * Events are collected in memory and written in batches. How often the files are forced onto the disk is up to the
+ * {@link Sync} policy.
+ */
+final class Journal implements AutoCloseable {
+
+    /**
+     * When the journal makes sure that what has been written is on the disk
+     */
+    enum Sync {
+        /**
+         * Never, that is left to the operating system
+         */
+        NEVER,
+        /**
+         * Whenever a batch of events is written
+         */
+        BATCH,
+        /**
+         * After every single event
+         */
+        ALWAYS
+    }
+
+    /**
+     * A checkpoint is made whenever this many events have happened since the last one
+     */
+    static final int CHECKPOINT_INTERVAL = 256;
+
+    private static final String EVENTS = ".events";
+    private static final String CHECKPOINTS = ".checkpoints";
+    /**
+     * The first bytes of both files, "MADNJ" and a format version
+     */
+    private static final long MAGIC = 0x4D41444E4A000002L;
+    private static final int HEADER_BYTES = Long.BYTES;
+    private static final int EVENT_BYTES = Short.BYTES;
+    /**
+     * The event count, the pegs of as many players as a board can have, then the player who is up, the roll, the flags
+     * and the shape of the board as players, path length and pegs, padded to 8 bytes
+     */
+    private static final int CHECKPOINT_BYTES = Long.BYTES * (BoardGeometry.MAX_PLAYERS + 2);
+    private static final int BUFFER_BYTES = 1 << 13;
+
+    private static final int ROLL = 1;
+    private static final int MOVE = 2;
+    private static final int START = 3;
+    private static final int RESET = 4;
+    private static final int KIND_SHIFT = 8;
+
+    private static final int EXTRA_ROLL = 1;
+    private static final int AWAITING_MOVE = 2;
+
+    private final FileChannel events;
+    private final FileChannel checkpoints;
+    private final Sync sync;
+    private final ByteBuffer eventBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long eventCount;
+    private long lastCheckpoint;
+
+    /**
+     * Creates a journal on open files
+     * @param events the events file, positioned at its end
+     * @param checkpoints the checkpoints file, positioned at its end
+     * @param sync when to force the files onto the disk
+     * @param eventCount how many events the events file already holds
+     * @param lastCheckpoint the event count of the last checkpoint in the file
+     */
+    private Journal(FileChannel events, FileChannel checkpoints, Sync sync, long eventCount, long lastCheckpoint) {
+        this.events = events;
+        this.checkpoints = checkpoints;
+        this.sync = sync;
+        this.eventCount = eventCount;
+        this.lastCheckpoint = lastCheckpoint;
+    }
+
+    /**
+     * Opens the journal of a session for appending, creating it if it doesn't exist yet. A half-written event or
+     * checkpoint at the end of a file, left over from a crash, is cut off, and so are checkpoints whose events never
+     * made it to the disk.
+     * @param directory the journal directory
+     * @param sessionId the id of the session
+     * @param sync when to force the files onto the disk
+     * @return the journal
+     * @throws IOException if the files can't be opened or are not journal files
+     */
+    static Journal open(Path directory, String sessionId, Sync sync) throws IOException {
+        String name = fileName(sessionId);
+        FileChannel events = openForAppend(directory.resolve(name + EVENTS), EVENT_BYTES);
+        FileChannel checkpoints;
+        try {
+            checkpoints = openForAppend(directory.resolve(name + CHECKPOINTS), CHECKPOINT_BYTES);
+        } catch (IOException e) {
+            events.close();
+            throw e;
+        }
+        long eventCount = (events.size() - HEADER_BYTES) / EVENT_BYTES;
+        long lastCheckpoint = 0;
+        try {
+            // checkpoints are written before their events, so a crash in between leaves checkpoints past the last
+            // event, and the next checkpoint would come after them with a smaller count
+            long end = checkpoints.size();
+            while (end > HEADER_BYTES) {
+                lastCheckpoint = readLong(checkpoints, end - CHECKPOINT_BYTES);
+                if (lastCheckpoint <= eventCount) {
+                    break;
+                }
+                lastCheckpoint = 0;
+                end -= CHECKPOINT_BYTES;
+            }
+            if (end < checkpoints.size()) {
+                checkpoints.truncate(end);
+                checkpoints.position(end);
+            }
+        } catch (IOException e) {
+            events.close();
+            checkpoints.close();
+            throw e;
+        }
+        return new Journal(events, checkpoints, sync, eventCount, lastCheckpoint);
+    }
+
+    /**
+     * Opens a journal file, writes the header into a new one and cuts off a half-written record at the end
+     * @param file the file
+     * @param recordBytes how long a record in the file is
+     * @return the channel, positioned at the end of the last whole record
+     * @throws IOException if the file can't be opened or is not a journal file
+     */
+    private static FileChannel openForAppend(Path file, int recordBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(MAGIC);
+                header.flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+            } else if (readLong(channel, 0) != MAGIC) {
+                throw new IOException("not a journal file: " + file);
+            }
+            long end = channel.size() - (channel.size() - HEADER_BYTES) % recordBytes;
+            channel.truncate(end);
+            channel.position(end);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the start of a new game
+     * @param game the game as it has just been started
+     */
+    synchronized void recordStart(Game game) {
+        append(START << KIND_SHIFT);
+        checkpoint(game);
+    }
+
+    /**
+     * Records a valid dice roll
+     * @param roll the number that came out of the dice roll
+     * @param game the game after the roll
+     */
+    synchronized void recordRoll(int roll, Game game) {
+        append(ROLL << KIND_SHIFT | roll);
+        afterEvent(game);
+    }
+
+    /**
+     * Records a move
+     * @param from the location code the peg was moved from
+     * @param game the game after the move
+     */
+    synchronized void recordMove(int from, Game game) {
+        append(MOVE << KIND_SHIFT | (from - Peg.NOWHERE));
+        afterEvent(game);
+    }
+
+    /**
+     * Records that the game in progress was dropped
+     */
+    synchronized void recordReset() {
+        append(RESET << KIND_SHIFT);
+        afterEvent(null);
+    }
+
+    /**
+     * @return how many events the journal holds, including those that have not been written yet
+     */
+    synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Adds an event to the batch
+     * @param event the encoded event
+     */
+    private void append(int event) {
+        if (!eventBuffer.hasRemaining()) {
+            flushUnchecked();
+        }
+        eventBuffer.putShort((short) event);
+        eventCount++;
+    }
+
+    /**
+     * Makes a checkpoint if it's time for one, and writes everything out if every event is to be forced to the disk
+     * @param game the game after the event, null if there is none
+     */
+    private void afterEvent(Game game) {
+        if (eventCount - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint(game);
+        } else if (sync == Sync.ALWAYS) {
+            flushUnchecked();
+        }
+    }
+
+    /**
+     * Adds a copy of the game to the batch
+     * @param game the game, null if there is none
+     */
+    private void checkpoint(Game game) {
+        if (checkpointBuffer.remaining() < CHECKPOINT_BYTES) {
+            flushUnchecked();
+        }
+        checkpointBuffer.putLong(eventCount);
+        if (game == null) {
+            for (int i = 0; i < BoardGeometry.MAX_PLAYERS; i++) {
+                checkpointBuffer.putLong(0);
+            }
+            // a turn that doesn't exist marks a checkpoint without a game
+            checkpointBuffer.put((byte) -1).put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 0);
+        } else {
+            BoardState state = game.getState();
+            BoardGeometry geometry = state.getGeometry();
+            for (int i = 0; i < BoardGeometry.MAX_PLAYERS; i++) {
+                checkpointBuffer.putLong(i < state.getNumberOfPlayers() ? state.getPegs(i) : 0);
+            }
+            int flags = (state.hasExtraRoll() ? EXTRA_ROLL : 0) | (game.isAwaitingMove() ? AWAITING_MOVE : 0);
+            checkpointBuffer.put((byte) state.getTurn()).put((byte) state.getRoll()).put((byte) flags)
+                    .put((byte) geometry.getPlayers()).put((byte) geometry.getPathLength())
+                    .put((byte) geometry.getPegs());
+        }
+        for (int i = 6; i < Long.BYTES; i++) {
+            checkpointBuffer.put((byte) 0);
+        }
+        lastCheckpoint = eventCount;
+        if (sync == Sync.ALWAYS) {
+            flushUnchecked();
+        }
+    }
+
+    /**
+     * Writes the batch out. Checkpoints go first, so an event never makes it to the disk without the checkpoint that
+     * came before it.
+     * @throws IOException if writing fails
+     */
+    synchronized void flush() throws IOException {
+        boolean written = checkpointBuffer.position() > 0 || eventBuffer.position() > 0;
+        drain(checkpoints, checkpointBuffer);
+        drain(events, eventBuffer);
+        if (written && sync != Sync.NEVER) {
+            checkpoints.force(false);
+            events.force(false);
+        }
+    }
+
+    /**
+     * Writes the batch out from a place that can't throw checked exceptions
+     */
+    private void flushUnchecked() {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes everything that is left and closes the files
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            try {
+                events.close();
+            } finally {
+                checkpoints.close();
+            }
+        }
+    }
+
+    /**
+     * Finds the game of a session as it was after a given number of events
+     * @param directory the journal directory
+     * @param sessionId the id of the session
+     * @param eventIndex how many events are to be played, more than there are means all of them
+     * @return the game, null if there was no game in progress at that point
+     * @throws IOException if the journal can't be read or is broken
+     */
+    static Game replay(Path directory, String sessionId, long eventIndex) throws IOException {
+        String name = fileName(sessionId);
+        try (FileChannel events = FileChannel.open(directory.resolve(name + EVENTS), StandardOpenOption.READ);
+             FileChannel checkpoints = FileChannel.open(directory.resolve(name + CHECKPOINTS),
+                     StandardOpenOption.READ)) {
+            long end = Math.min(eventIndex, (events.size() - HEADER_BYTES) / EVENT_BYTES);
+
+            // the last checkpoint at or before the end, checkpoints are sorted by their event count
+            long low = 0;
+            long high = (checkpoints.size() - HEADER_BYTES) / CHECKPOINT_BYTES - 1;
+            long found = -1;
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                if (readLong(checkpoints, HEADER_BYTES + middle * CHECKPOINT_BYTES) <= end) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            Game game = null;
+            long first = 0;
+            if (found >= 0) {
+                ByteBuffer checkpoint = ByteBuffer.allocate(CHECKPOINT_BYTES);
+                readFully(checkpoints, checkpoint, HEADER_BYTES + found * CHECKPOINT_BYTES);
+                first = checkpoint.getLong();
+                game = restore(checkpoint);
+            }
+
+            ByteBuffer batch = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            int[] moves = new int[Move.MAX_MOVES];
+            for (long index = first; index < end;) {
+                batch.clear();
+                batch.limit((int) Math.min(BUFFER_BYTES, (end - index) * EVENT_BYTES));
+                readFully(events, batch, HEADER_BYTES + index * EVENT_BYTES);
+                while (batch.hasRemaining()) {
+                    game = apply(game, batch.getShort(), moves, index++);
+                }
+            }
+            return game;
+        }
+    }
+
+    /**
+     * Plays a single event
+     * @param game the game before the event
+     * @param event the encoded event
+     * @param moves room for the possible moves after a roll
+     * @param index the index of the event, for error messages
+     * @return the game after the event
+     * @throws IOException if the event does not fit the game
+     */
+    private static Game apply(Game game, int event, int[] moves, long index) throws IOException {
+        int kind = (event & 0xFFFF) >>> KIND_SHIFT;
+        if (kind == RESET) {
+            return null;
+        } else if (game == null || kind == START) {
+            throw new IOException("journal event " + index + " does not follow a game or a checkpoint");
+        } else if (kind == ROLL) {
+            game.getMoves(event & 0xFF, moves);
+        } else if (kind == MOVE) {
+            int move = game.findMove((event & 0xFF) + Peg.NOWHERE);
+            if (move == Move.NONE) {
+                throw new IOException("journal event " + index + " is not a possible move");
+            }
+            game.executeMove(move);
+        } else {
+            throw new IOException("journal event " + index + " is unknown");
+        }
+        return game;
+    }
+
+    /**
+     * Builds the game a checkpoint describes
+     * @param checkpoint the checkpoint, positioned right after its event count
+     * @return the game, null if there was none
+     * @throws IOException if the checkpoint names a board that can't exist
+     */
+    private static Game restore(ByteBuffer checkpoint) throws IOException {
+        long[] pegs = new long[BoardGeometry.MAX_PLAYERS];
+        for (int i = 0; i < pegs.length; i++) {
+            pegs[i] = checkpoint.getLong();
+        }
+        int turn = checkpoint.get();
+        int roll = checkpoint.get();
+        int flags = checkpoint.get();
+        if (turn < 0) {
+            return null;
+        }
+        BoardGeometry geometry = BoardGeometry.of(checkpoint.get(), checkpoint.get(), checkpoint.get());
+        if (geometry == null) {
+            throw new IOException("journal checkpoint is for a board that can't exist");
+        }
+        BoardState state = new BoardState(geometry);
+        for (int i = 0; i < geometry.getPlayers(); i++) {
+            for (long bits = pegs[i]; bits != 0; bits &= bits - 1) {
+                state.place(i, Long.numberOfTrailingZeros(bits));
+            }
+        }
+        state.setTurn(turn);
+        state.setRoll(roll);
+        state.setExtraRoll((flags & EXTRA_ROLL) != 0);
+        Game game = new Game(state);
+        if ((flags & AWAITING_MOVE) != 0) {
+            game.getMoves(roll, new int[Move.MAX_MOVES]);
+        }
+        return game;
+    }
+
+    /**
+     * Lists every session that has a journal in a directory
+     * @param directory the journal directory
+     * @return the ids of the sessions
+     * @throws IOException if the directory can't be read
+     */
+    static List<String> list(Path directory) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EVENTS)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                ids.add(sessionId(name.substring(0, name.length() - EVENTS.length())));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Turns a session id into a name that is safe to use for files: letters, digits, '-' and '_' stay as they are,
+     * every other byte of the id's UTF-8 form is written as '%' and two hex digits.
+     * @param sessionId the id of the session
+     * @return the file name without an extension
+     */
+    static String fileName(String sessionId) {
+        StringBuilder name = new StringBuilder(sessionId.length());
+        for (byte b : sessionId.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_') {
+                name.append(c);
+            } else {
+                name.append('%').append(Character.forDigit(c >>> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Undoes {@link #fileName(String)}
+     * @param name the file name without an extension
+     * @return the id of the session
+     */
+    static String sessionId(String name) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '%' && i + 2 < name.length()) {
+                bytes.write(Character.digit(name.charAt(i + 1), 16) << 4 | Character.digit(name.charAt(i + 2), 16));
+                i += 2;
+            } else {
+                bytes.write(c);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a long at a position of a file
+     * @param channel the file
+     * @param position where the long starts
+     * @return the long
+     * @throws IOException if reading fails
+     */
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.getLong();
+    }
+
+    /**
+     * Fills a buffer from a position of a file and flips it
+     * @param channel the file
+     * @param buffer the buffer
+     * @param position where reading starts
+     * @throws IOException if reading fails or the file ends too early
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new IOException("journal file ends too early");
+            }
+            at += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes a whole buffer at a position of a file
+     * @param channel the file
+     * @param buffer the bytes
+     * @param position where writing starts
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    /**
+     * Appends everything in a buffer to a file and empties the buffer
+     * @param channel the file, positioned at its end
+     * @param buffer the bytes
+     * @throws IOException if writing fails
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
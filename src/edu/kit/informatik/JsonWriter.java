@@ -0,0 +1,191 @@
+package edu.kit.informatik;
+
+/**
+ * Writes JSON straight into a {@link StringBuilder}, token by token, without building a tree first. The writer keeps
+ * track of where commas go, the caller only has to open and close objects and arrays in the right order. Objects and
+ * arrays may be nested up to 64 levels deep.
+ */
+final class JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder out;
+    /**
+     * One bit per open object or array, set while nothing has been written into it yet
+     */
+    private long empty;
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * Creates a writer
+     * @param out where the JSON goes
+     */
+    JsonWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    /**
+     * @return where the JSON goes
+     */
+    StringBuilder getOutput() {
+        return out;
+    }
+
+    /**
+     * Opens an object
+     * @return this writer
+     */
+    JsonWriter beginObject() {
+        return open('{');
+    }
+
+    /**
+     * Closes the innermost object
+     * @return this writer
+     */
+    JsonWriter endObject() {
+        return close('}');
+    }
+
+    /**
+     * Opens an array
+     * @return this writer
+     */
+    JsonWriter beginArray() {
+        return open('[');
+    }
+
+    /**
+     * Closes the innermost array
+     * @return this writer
+     */
+    JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of an object
+     * @param name the name
+     * @return this writer
+     */
+    JsonWriter name(String name) {
+        separate();
+        string(name);
+        out.append(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string, or null
+     * @param value the string
+     * @return this writer
+     */
+    JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            out.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a number
+     * @param value the number
+     * @return this writer
+     */
+    JsonWriter value(long value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    /**
+     * Writes true or false
+     * @param value the truth value
+     * @return this writer
+     */
+    JsonWriter value(boolean value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    /**
+     * Opens an object or array
+     * @param bracket the opening bracket
+     * @return this writer
+     */
+    private JsonWriter open(char bracket) {
+        separate();
+        out.append(bracket);
+        empty |= 1L << depth++;
+        return this;
+    }
+
+    /**
+     * Closes an object or array
+     * @param bracket the closing bracket
+     * @return this writer
+     */
+    private JsonWriter close(char bracket) {
+        depth--;
+        out.append(bracket);
+        return this;
+    }
+
+    /**
+     * Writes the comma that goes before a value, unless it is the first one of its object or array or comes right
+     * after its name
+     */
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            long bit = 1L << (depth - 1);
+            if ((empty & bit) == 0) {
+                out.append(',');
+            }
+            empty &= ~bit;
+        }
+    }
+
+    /**
+     * Writes a string in quotes, with everything escaped that JSON needs escaped
+     * @param value the string
+     */
+    private void string(String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        out.append("\\u").append(HEX[c >>> 12]).append(HEX[c >>> 8 & 0xF]).append(HEX[c >>> 4 & 0xF])
+                                .append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,156 @@
+package edu.kit.informatik;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations that any number of threads may record into at once, without locks and without allocating.
+ * The buckets are log-linear: every power of two is split into {@link #SUB_BUCKETS} buckets of equal width, so every
+ * bucket is at most a sixteenth as wide as the values in it, from one nanosecond up to the largest long. Recording a
+ * time is an index computation and an atomic increment. Reading the histogram while it is being recorded into gives
+ * a view that may be a few records behind, but never a broken one.
+ */
+final class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty histogram
+     * @param name what is being timed
+     */
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return what is being timed
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Records how long something took
+     * @param nanos the duration in nanoseconds, negative ones count as 0
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records the time since a start
+     * @param startNanos when it started, as {@link System#nanoTime()}
+     */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    @Override
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : sum.get() / (double) count;
+    }
+
+    @Override
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @Override
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @Override
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Finds the time a given share of all recorded times are at or below
+     * @param percent the share in percent
+     * @return the upper end of the bucket the time falls into, but no more than the longest time, 0 if nothing has
+     * been recorded
+     */
+    long getPercentile(double percent) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long rank = (long) Math.ceil(count * percent / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the bucket a value goes into. Values below {@link #SUB_BUCKETS} get a bucket of their own, every other
+     * value goes by its highest bit and the {@link #SUB_BITS} bits below it.
+     * @param value the value, not negative
+     * @return the index of its bucket
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift & SUB_BUCKETS - 1);
+    }
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the highest value that goes into it
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
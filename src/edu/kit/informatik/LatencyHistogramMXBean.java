@@ -0,0 +1,43 @@
+package edu.kit.informatik;
+
+/**
+ * What JMX shows of a {@link LatencyHistogram}. All times are in nanoseconds, the percentiles are accurate to within
+ * one part in sixteen.
+ */
+public interface LatencyHistogramMXBean {
+
+    /**
+     * @return how many times have been recorded
+     */
+    long getCount();
+
+    /**
+     * @return the mean of all recorded times
+     */
+    double getMean();
+
+    /**
+     * @return the median of all recorded times
+     */
+    long getP50();
+
+    /**
+     * @return the time 99 percent of all recorded times are below
+     */
+    long getP99();
+
+    /**
+     * @return the time 99.9 percent of all recorded times are below
+     */
+    long getP999();
+
+    /**
+     * @return the longest recorded time
+     */
+    long getMax();
+
+    /**
+     * Forgets every time recorded so far
+     */
+    void reset();
+}
@@ -1,83 +1,318 @@
 package edu.kit.informatik;
 
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import javax.management.JMException;
+
 public class Main {
 
+    /**
+     * How many characters of input are read from the stream at once in batch mode
+     */
+    private static final int READ_BUFFER = 1 << 16;
+    /**
+     * In batch mode, output is written out early once this many characters have piled up
+     */
+    private static final int WRITE_BUFFER = 1 << 20;
+    /**
+     * The port the server listens on when none is given
+     */
+    private static final int DEFAULT_PORT = 7373;
+    /**
+     * How long the HTTP API keeps sessions nobody uses when nothing else is said, in minutes
+     */
+    private static final long DEFAULT_IDLE_MINUTES = 30;
+
     /**
      * Main method. Handles the user interactions. Gets the user input from the Terminal class, extracts the command
      * from it, if the user has input a valid one. The only program logic that happens here is checking whether the
      * command is valid, and whether the user has actually given *any* argument at all. Literally anything passes as an
      * argument as long as it exists after a whitespace. The actual verification of the argument happens in its
-     * relevant class method.
-     * @param args default main args, not meant to do anything.
+     * relevant class method. The output goes through an {@link OutputSink}, which is flushed whenever the next line
+     * of input is not there yet.
+     * @param args empty for the interactive console. "--batch" runs the commands from standard input in batch mode,
+     *             "--batch" followed by a path runs the commands from that file. Either may come after "--journal" and
+     *             a directory, which records every game in that directory and picks up the games that are still in
+     *             progress there, optionally followed by "--sync" and "never", "batch" or "always". "--server"
+     *             followed by an optional port serves the console's commands over TCP instead, see {@link GameServer}.
+     *             Any of these may come after "--http" and a port, which also offers the games as an HTTP API, see
+     *             {@link HttpApi}, optionally followed by "--idle" and after how many minutes unused sessions are
+     *             dropped, 0 for never. All of that may come after "--tablebase" and a file written by
+     *             {@link Tablebase}, which the move search then uses to judge races on the classic board.
      */
     public static void main(String[] args) {
 
-        Controller controller = new Controller();
-        String input;
-        String command;
-        String argument = null;
+        try {
+            CommandStats.register();
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
 
-        do {
+        int next = 0;
+        if (args.length > 1 && args[0].equals("--tablebase")) {
+            try {
+                Expectimax.useTablebase(Tablebase.open(Paths.get(args[1])));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            next = 2;
+        }
+
+        SessionRegistry sessions = new SessionRegistry();
+        if (args.length > next + 1 && args[next].equals("--journal")) {
+            Journal.Sync sync = Journal.Sync.BATCH;
+            Path directory = Paths.get(args[next + 1]);
+            next += 2;
+            if (args.length > next + 1 && args[next].equals("--sync")) {
+                sync = Journal.Sync.valueOf(args[next + 1].toUpperCase(Locale.ROOT));
+                next += 2;
+            }
+            sessions = new SessionRegistry(directory, sync);
+            try {
+                sessions.recover();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        Controller controller = new Controller(sessions);
 
-            input = Terminal.readLine(); // Takes the terminal input from the Terminal class.
+        HttpApi http = null;
+        if (args.length > next + 1 && args[next].equals("--http")) {
+            int port = Integer.parseInt(args[next + 1]);
+            long idleMinutes = DEFAULT_IDLE_MINUTES;
+            next += 2;
+            if (args.length > next + 1 && args[next].equals("--idle")) {
+                idleMinutes = Long.parseLong(args[next + 1]);
+                next += 2;
+            }
+            try {
+                http = new HttpApi(controller, new InetSocketAddress(port), idleMinutes * 60_000);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            http.start();
+        }
 
-            if (input.contains(" ")) { //If there's a space character in the input
-                String[] splitInput = input.split("\\s", 2); // Split the input into two, from the space char
-                command = splitInput[0]; // Put the part that comes before the space into the command string
-                argument = splitInput[1]; // Cast the second part as an int, and make it the argument
-            } else {
-                command = input; // If there's no space character, use the input as-is.
+        // the HTTP server's threads would keep the program running, so it only lives as long as the console does
+        try {
+            run(controller, args, next);
+        } finally {
+            if (http != null) {
+                http.close();
             }
+        }
+    }
 
-            switch (command) {
-                case "start":
-                    if (argument == null) {
-                        Terminal.printLine(controller.startGame());
-                    } else {
-                        Terminal.printLine(controller.startGame(argument));
-                    }
-                    break;
-                case "roll":
-                    if (argument == null) {
-                        Terminal.printError("the result of the dice roll must be given!");
-                    } else {
-                        Terminal.printLine(controller.rollTheDice(argument));
-                    }
-                    break;
-                case "move":
-                    if (argument == null) {
-                        Terminal.printError("I'm sorry Dave, I'm afraid I can't do that.");
-                    } else {
-                        Terminal.printLine(controller.timeToMotor(argument));
-                    }
-                    break;
-                case "print":
-                    if (argument == null) {
-                        Terminal.printLine(controller.toString());
-                        break;
-                    }
-                case "abort":
-                    if (argument == null) {
-                        controller.resetGame();
-                        break;
-                    }
-                case "quit":
-                    if (argument == null) {
-                        break;
+    /**
+     * Runs the TCP server, batch mode or the interactive console, whichever the arguments ask for, until it is done
+     * @param controller the controller that runs the games
+     * @param args the arguments the program was started with
+     * @param next the index of the first argument that is left, see {@link #main(String[])}
+     */
+    private static void run(Controller controller, String[] args, int next) {
+        if (args.length > next && args[next].equals("--server")) {
+            int port = args.length > next + 1 ? Integer.parseInt(args[next + 1]) : DEFAULT_PORT;
+            int processors = Runtime.getRuntime().availableProcessors();
+            try (GameServer server = new GameServer(controller, new InetSocketAddress(port),
+                    Math.max(1, processors / 2), processors)) {
+                server.start();
+                Terminal.printLine("listening on port " + server.getPort());
+                server.await();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        if (args.length > next && args[next].equals("--batch")) {
+            Writer out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out));
+            try {
+                if (args.length > next + 1) {
+                    try (InputStream in = new FileInputStream(args[next + 1])) {
+                        runBatch(controller, in, out);
                     }
-                case "test":
-                    Terminal.printLine(controller.startGame("36,AR,CR,DR;SB,10,16,22;SG,13,BG,DG;SY,0,20,BY"));
+                } else {
+                    runBatch(controller, System.in, out);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+
+        String input;
+
+        try (OutputSink out = OutputSink.forStandardStreams()) {
+            do {
+
+                // whoever is at the other end may be waiting for the output before they type the next line
+                if (System.in.available() == 0) {
+                    out.flush();
+                }
+                input = Terminal.readLine(); // Takes the terminal input from the Terminal class.
+                if (input == null) {
                     break;
-                default:
-                    Terminal.printError("command not recognized!");
+                }
+                String output = execute(controller, input);
+                controller.getSessions().flush(Controller.DEFAULT_SESSION);
+                if (output != null) {
+                    out.printLine(output);
+                }
+
+            } while (!input.equals("quit"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs a whole recorded session without any interaction. The input is read in large chunks, and the output of all
+     * commands in a chunk is collected and written at once when the chunk is done, so that the output is exactly what
+     * the interactive console would have printed for the same input.
+     * @param in where the commands come from, one per line
+     * @param out where the output goes
+     * @throws IOException if reading or writing fails
+     */
+    static void runBatch(InputStream in, Writer out) throws IOException {
+        runBatch(new Controller(), in, out);
+    }
+
+    /**
+     * Runs a whole recorded session without any interaction, see {@link #runBatch(InputStream, Writer)}. Journals
+     * are written out together with the output of every chunk.
+     * @param controller the controller that runs the games
+     * @param in where the commands come from, one per line
+     * @param out where the output goes
+     * @throws IOException if reading or writing fails
+     */
+    static void runBatch(Controller controller, InputStream in, Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in), READ_BUFFER);
+        StringBuilder batch = new StringBuilder(WRITE_BUFFER);
+        String lineSeparator = System.lineSeparator();
+        String input;
+
+        try {
+            while ((input = reader.readLine()) != null) {
+                String output = execute(controller, input);
+                if (output != null) {
+                    batch.append(output).append(lineSeparator);
+                }
+                if (input.equals("quit")) {
                     break;
+                }
+                // a chunk ends when everything that has been read is processed, the next line might take a while
+                if (batch.length() >= WRITE_BUFFER || !reader.ready()) {
+                    controller.getSessions().flush(Controller.DEFAULT_SESSION);
+                    out.append(batch);
+                    out.flush();
+                    batch.setLength(0);
+                }
             }
-            argument = null;
+        } finally {
+            controller.getSessions().flush(Controller.DEFAULT_SESSION);
+            out.append(batch);
+            out.flush();
+        }
+    }
 
-        } while (!input.equals("quit"));
+    /**
+     * Executes a single line of input
+     * @param controller the controller that runs the game
+     * @param input the line as the user typed it
+     * @return what is to be printed for it, null if nothing
+     */
+    static String execute(Controller controller, String input) {
+        return execute(controller, Controller.DEFAULT_SESSION, input);
+    }
 
+    /**
+     * Executes a single line of input in a given session
+     * @param controller the controller that runs the games
+     * @param sessionId the id of the session the line is meant for
+     * @param input the line as the user typed it
+     * @return what is to be printed for it, null if nothing
+     */
+    static String execute(Controller controller, String sessionId, String input) {
+        long start = System.nanoTime();
+        try {
+            return dispatch(controller, sessionId, input);
+        } finally {
+            CommandStats.DISPATCH.recordSince(start);
+        }
     }
 
+    /**
+     * Reads a line with the {@link CommandLexer} and hands its command and argument to the controller
+     * @param controller the controller that runs the games
+     * @param sessionId the id of the session the line is meant for
+     * @param input the line as the user typed it
+     * @return what is to be printed for it, null if nothing
+     */
+    private static String dispatch(Controller controller, String sessionId, String input) {
+
+        long token = CommandLexer.lex(input);
+        boolean hasArgument = CommandLexer.hasArgument(token);
 
+        switch (CommandLexer.getCommand(token)) {
+            case START:
+                return controller.startGame(sessionId, CommandLexer.getArgument(input, token));
+            case ROLL:
+                if (!hasArgument) {
+                    return "Error, the result of the dice roll must be given!";
+                } else {
+                    return controller.rollTheDice(sessionId, CommandLexer.getValue(token));
+                }
+            case MOVE:
+                if (!hasArgument) {
+                    return "Error, I'm sorry Dave, I'm afraid I can't do that.";
+                } else {
+                    return controller.timeToMotor(sessionId, CommandLexer.getValue(token));
+                }
+            case SUGGEST:
+                return controller.suggestMove(sessionId, CommandLexer.getArgument(input, token));
+            case AUTOMOVE:
+                return controller.autoMove(sessionId, CommandLexer.getArgument(input, token));
+            case BOARD:
+                return controller.setBoard(sessionId, CommandLexer.getArgument(input, token));
+            case PERFT:
+                if (!hasArgument) {
+                    return "Error, the depth must be given!";
+                } else {
+                    return controller.perft(sessionId, CommandLexer.getArgument(input, token));
+                }
+            case STATS:
+                return !hasArgument ? controller.getStats() : "Error, command not recognized!";
+            case PRINT:
+                if (!hasArgument) {
+                    return controller.toString(sessionId);
+                }
+            case ABORT:
+                if (!hasArgument) {
+                    controller.resetGame(sessionId);
+                    return null;
+                }
+            case QUIT:
+                if (!hasArgument) {
+                    return null;
+                }
+            case TEST:
+                return controller.startGame(sessionId, "36,AR,CR,DR;SB,10,16,22;SG,13,BG,DG;SY,0,20,BY");
+            default:
+                return "Error, command not recognized!";
+        }
+    }
 
 }
@@ -0,0 +1,96 @@
+package edu.kit.informatik;
+
+/**
+ * Describes a move packed into a single int, so that lists of moves can be kept in plain int arrays. The lowest byte
+ * holds the location code (see {@link Peg}) the peg is moved from, the second byte the location code it is moved to,
+ * and the bits above that what kind of move it is and whether another player's peg gets sent home by it.
+ */
+final class Move {
+
+    /**
+     * A peg is taken from home and put on the player's start square
+     */
+    static final int LAUNCH = 0;
+    /**
+     * A peg moves from one square of the gameBoard to another
+     */
+    static final int TRACK = 1;
+    /**
+     * A peg leaves the gameBoard and arrives in the end area
+     */
+    static final int ENTER = 2;
+    /**
+     * A peg moves further inside the end area
+     */
+    static final int END_AREA = 3;
+    /**
+     * Stands for "no move at all". No encoded move is ever negative.
+     */
+    static final int NONE = -1;
+    /**
+     * The most moves a single dice roll can produce: one per peg, on a board with as many pegs as there can be
+     */
+    static final int MAX_MOVES = BoardGeometry.MAX_PEGS;
+
+    private static final int KIND_SHIFT = 16;
+    private static final int CAPTURE = 1 << 20;
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private Move() {
+
+    }
+
+    /**
+     * Packs a move into an int
+     * @param from the location code the peg is moved from
+     * @param to the location code the peg is moved to
+     * @param kind one of {@link #LAUNCH}, {@link #TRACK}, {@link #ENTER} and {@link #END_AREA}
+     * @param capture true if there is another player's peg on the target that will be sent home
+     * @return the encoded move
+     */
+    static int encode(int from, int to, int kind, boolean capture) {
+        return (from & 0xFF) | (to & 0xFF) << 8 | kind << KIND_SHIFT | (capture ? CAPTURE : 0);
+    }
+
+    /**
+     * @param move an encoded move
+     * @return the same move, flagged as sending another player's peg home
+     */
+    static int withCapture(int move) {
+        return move | CAPTURE;
+    }
+
+    /**
+     * @param move the encoded move
+     * @return the location code the peg is moved from
+     */
+    static int getFrom(int move) {
+        return (byte) move;
+    }
+
+    /**
+     * @param move the encoded move
+     * @return the location code the peg is moved to
+     */
+    static int getTo(int move) {
+        return (byte) (move >>> 8);
+    }
+
+    /**
+     * @param move the encoded move
+     * @return what kind of move it is
+     */
+    static int getKind(int move) {
+        return (move >>> KIND_SHIFT) & 0xF;
+    }
+
+    /**
+     * @param move the encoded move
+     * @return true if the move sends another player's peg home
+     */
+    static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+}
@@ -0,0 +1,58 @@
+package edu.kit.informatik;
+
+/**
+ * Lists the possible moves for a dice roll. Works on the bare {@link BoardState} and writes the moves into an array
+ * given by the caller, so that generating moves neither changes the game nor creates any garbage.
+ * Where a peg ends up for each player, location and roll never changes, so all of that is worked out once per
+ * {@link BoardGeometry}. Generating moves is then a table lookup per peg plus a look at who is standing on the target,
+ * however large the board is.
+ */
+final class MoveGenerator {
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private MoveGenerator() {
+
+    }
+
+    /**
+     * Generates every move the player who is up can make with the given dice roll. The order of the moves is the order
+     * in which they are listed to the user: pegs on the gameBoard by their square first, then pegs in the end area.
+     * @param state the board
+     * @param roll the number that came out of the dice roll
+     * @param moves the array the encoded moves are written to, needs room for {@link Move#MAX_MOVES} moves
+     * @return how many moves have been written
+     */
+    static int generate(BoardState state, int roll, int[] moves) {
+
+        BoardGeometry geometry = state.getGeometry();
+        int turn = state.getTurn();
+        long own = state.getPegs(turn);
+        long others = state.getOccupiedSquares() & ~own;
+
+        //If the dice roll is a 6 AND the user has a launchable piece AND the start position is available, that's the
+        //only possible move
+        if (roll == 6 && state.getHomeCount(turn) > 0) {
+            int launch = geometry.getLaunch(turn);
+            long start = 1L << Move.getTo(launch);
+            if ((own & start) == 0) {
+                moves[0] = (others & start) == 0 ? launch : Move.withCapture(launch);
+                return 1;
+            }
+        }
+
+        // the bits of a player's pegs are ordered by square first and end area spot second, just like the list
+        int count = 0;
+        for (long pegs = own; pegs != 0; pegs &= pegs - 1) {
+            int move = geometry.getMove(turn, Long.numberOfTrailingZeros(pegs), roll);
+            if (move != Move.NONE) {
+                long target = 1L << Move.getTo(move);
+                if ((own & target) == 0) {
+                    moves[count++] = (others & target) == 0 ? move : Move.withCapture(move);
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+package edu.kit.informatik;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides which of the possible moves a player makes when nobody is at the console to choose, for example in the
+ * {@link Simulator} or in a {@link Tournament}. This is the strategy of a bot. The ones that come with the game can be
+ * looked up by name, see {@link #byName(String)}. None of them creates any garbage, so that they can play millions of
+ * games.
+ */
+public interface MovePicker {
+
+    /**
+     * Picks one of the moves uniformly at random
+     */
+    MovePicker RANDOM = (game, moves, count, random) -> moves[random.nextInt(count)];
+
+    /**
+     * Always picks the first move in the list, which is the peg furthest back on the gameBoard
+     */
+    MovePicker FIRST = (game, moves, count, random) -> moves[0];
+
+    /**
+     * Moves the peg that has come furthest, so that it gets home before it can be hit
+     */
+    MovePicker FURTHEST = (game, moves, count, random) -> {
+        BoardGeometry geometry = game.getGeometry();
+        int turn = game.getTurn();
+        int best = moves[0];
+        int bestProgress = geometry.getProgress(turn, Move.getFrom(best));
+        for (int i = 1; i < count; i++) {
+            int progress = geometry.getProgress(turn, Move.getFrom(moves[i]));
+            if (progress > bestProgress) {
+                best = moves[i];
+                bestProgress = progress;
+            }
+        }
+        return best;
+    };
+
+    /**
+     * Sends another player's peg home whenever it can, with the peg that has come furthest if there is a choice.
+     * Otherwise plays like {@link #FURTHEST}.
+     */
+    MovePicker CAPTURE = (game, moves, count, random) -> {
+        BoardGeometry geometry = game.getGeometry();
+        int turn = game.getTurn();
+        int best = Move.NONE;
+        int bestProgress = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            // a capture beats any progress, which is less than the number of locations
+            int progress = geometry.getProgress(turn, Move.getFrom(moves[i]))
+                    + (Move.isCapture(moves[i]) ? geometry.getLocations() : 0);
+            if (progress > bestProgress) {
+                best = moves[i];
+                bestProgress = progress;
+            }
+        }
+        return best;
+    };
+
+    /**
+     * Leaves as few of its pegs as it can where another player could hit them with a single roll, the same danger
+     * {@link Evaluation} counts. Among equally safe moves it plays like {@link #FURTHEST}.
+     */
+    MovePicker SAFEST = (game, moves, count, random) -> {
+        BoardGeometry geometry = game.getGeometry();
+        BoardState state = game.getState();
+        int turn = game.getTurn();
+        long others = state.getOccupiedSquares() & ~state.getTrack(turn);
+        long threatened = 0;
+        for (int roll = 1; roll <= 6; roll++) {
+            threatened |= geometry.rotate(others, roll);
+        }
+        int best = Move.NONE;
+        int bestDanger = Integer.MAX_VALUE;
+        int bestProgress = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int from = Move.getFrom(moves[i]);
+            int to = Move.getTo(moves[i]);
+            // the peg leaves the danger it was in and walks into the danger of its target, end areas are safe
+            int danger = (!geometry.hasArrived(to) && (threatened >>> to & 1) != 0 ? 1 : 0)
+                    - (!Peg.isHome(from) && !geometry.hasArrived(from) && (threatened >>> from & 1) != 0 ? 1 : 0);
+            int progress = geometry.getProgress(turn, from);
+            if (danger < bestDanger || danger == bestDanger && progress > bestProgress) {
+                best = moves[i];
+                bestDanger = danger;
+                bestProgress = progress;
+            }
+        }
+        return best;
+    };
+
+    /**
+     * Picks a move
+     * @param game the game, with the dice already rolled for the player who is up
+     * @param moves the possible moves, encoded as described in {@link Move}
+     * @param count how many of the entries in moves are possible moves, at least 1
+     * @param random the random number generator of the thread the game is played in
+     * @return one of the possible moves
+     */
+    int pick(Game game, int[] moves, int count, SplittableRandom random);
+
+    /**
+     * Looks up one of the strategies that come with the game
+     * @param name "random", "first", "furthest", "capture" or "safest"
+     * @return the strategy, null if there is none by that name
+     */
+    static MovePicker byName(String name) {
+        switch (name) {
+            case "random":
+                return RANDOM;
+            case "first":
+                return FIRST;
+            case "furthest":
+                return FURTHEST;
+            case "capture":
+                return CAPTURE;
+            case "safest":
+                return SAFEST;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.kit.informatik;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Where the console's lines go instead of straight to {@link System#out} and {@link System#err}, which write every
+ * line on its own and make the game wait for it. A sink collects lines and writes them out in large chunks. Lines to
+ * standard output and standard error come out in the order they were printed, even though they go to different
+ * streams. Lines that have been printed are only certain to have been written after {@link #flush()}, which is to be
+ * called before waiting for input, and after {@link #close()}.
+ */
+interface OutputSink extends Closeable {
+
+    /**
+     * How many bytes of output are collected before they are written out
+     */
+    int BUFFER = 1 << 16;
+    /**
+     * How many lines the asynchronous sink holds before printing a line has to wait for the writer
+     */
+    int RING = 1 << 10;
+
+    /**
+     * Prints a line to standard output
+     * @param line the line, without the line separator
+     * @throws IOException if writing has failed
+     */
+    void printLine(String line) throws IOException;
+
+    /**
+     * Prints a line to standard error
+     * @param line the line, without the line separator
+     * @throws IOException if writing has failed
+     */
+    void printErrorLine(String line) throws IOException;
+
+    /**
+     * Writes out every line that has been printed so far
+     * @throws IOException if writing has failed
+     */
+    void flush() throws IOException;
+
+    /**
+     * Writes out every line that has been printed and lets go of the sink. The standard streams stay open.
+     * @throws IOException if writing has failed
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Creates a sink for the standard streams. With a console attached, the lines are written by a thread of their
+     * own, see {@link AsyncOutputSink}, so that a slow terminal does not hold the game up. Without one, the output goes
+     * to a pipe or a file, and the lines are encoded straight into a buffer that is written when it is full or
+     * flushed, see {@link EncodedOutputSink}.
+     * @return the sink
+     */
+    static OutputSink forStandardStreams() {
+        EncodedOutputSink direct = new EncodedOutputSink(new FileOutputStream(FileDescriptor.out),
+                new FileOutputStream(FileDescriptor.err), getStandardCharset(), BUFFER);
+        return System.console() == null ? direct : new AsyncOutputSink(direct, RING);
+    }
+
+    /**
+     * @return the charset {@link System#out} encodes its characters in
+     */
+    static Charset getStandardCharset() {
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        try {
+            return name == null ? Charset.defaultCharset() : Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+}
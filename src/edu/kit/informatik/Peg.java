@@ -1,110 +1,38 @@
 package edu.kit.informatik;
 
 /**
- * Implements the player pieces in the Mensch Ärgere Dich Nicht game
+ * Implements the player pieces in the Mensch Ärgere Dich Nicht game. A peg is not an object of its own, it is just a
+ * location code inside its owner's part of the {@link BoardState}:
+ * - {@link #HOME} means the peg is at home waiting to be put in the game
+ * - 0 up to the path length (exclusive) means the peg is on that square of the gameBoard
+ * - the path length plus n means the peg has arrived and sits on the n-th spot of the end area
+ * The path length depends on the board, so everything else about locations is up to its {@link BoardGeometry}.
  */
-public class Peg implements Comparable<Peg> {
-
-    private int position;
-    private boolean isHome = false;
-    private boolean hasArrived = false;
-    private int owner;
-
-    /**
-     * Constructor that sets the peg's owner and its position. A negative position means the peg is not on the gameBoard
-     * 0>position>-4 means the peg is in the end area, and position = -4 means the peg is at home. The boolean vars
-     * that describe where the peg is supposed to be are set based on the position value.
-     * @param position where the peg is
-     * @param owner who owns the peg
-     */
-    Peg(int position, int owner) {
-        this.owner = owner;
-        if (position >= 0) {
-            this.position = position;
-        } else if (position == -5) {
-            isHome = true;
-            this.position = position * -1;
-        } else {
-            hasArrived = true;
-            this.position = position * -1;
-        }
-    }
-
-    /**
-     * Who owns the peg?
-     * @return the owner
-     */
-    int getOwner() {
-        return owner;
-    }
-
-    /**
-     * Is the peg at home waiting to be put in the game?
-     * @return true if it is, false if not.
-     */
-    boolean isHome() {
-        return isHome;
-    }
+public final class Peg {
 
     /**
-     * Sets the isHome variable
-     * @param home true if the peg is now home, false if it's now out in the game
+     * The location code of a peg that is at home
      */
-    void setHome(boolean home) {
-        isHome = home;
-    }
+    static final int HOME = -1;
 
     /**
-     * Where is the peg?
-     * @return its position
+     * Stands for a location that does not exist
      */
-    int getPosition() {
-        return position;
-    }
+    static final int NOWHERE = -2;
 
     /**
-     * Has the peg made it into the player's end area?
-     * @return true if it has, false if not
+     * Private constructor, there is nothing to instantiate.
      */
-    boolean hasArrived() {
-        return hasArrived;
-    }
+    private Peg() {
 
-    /**
-     * Sets the peg's new position
-     * @param position the new position
-     */
-    void setPosition(int position) {
-        this.position = position;
     }
 
     /**
-     * Flips the hasArrived variable to true, which means the peg has entered the end area
+     * Is the peg at home waiting to be put in the game?
+     * @param location the location code of the peg
+     * @return true if it is, false if not.
      */
-    void setHasArrived() {
-        hasArrived = true;
-    }
-
-    @Override
-    public int compareTo(Peg peg) {
-
-        int thispos;
-        if (isHome) {
-            thispos = position * -1;
-        } else if (hasArrived) {
-            thispos = position + 40;
-        } else {
-            thispos = position;
-        }
-        int thatpos;
-        if (peg.isHome) {
-            thatpos = peg.getPosition() * -1;
-        } else if (peg.hasArrived) {
-            thatpos = peg.getPosition() + 40;
-        } else {
-            thatpos = peg.getPosition();
-        }
-
-        return thispos - thatpos;
+    static boolean isHome(int location) {
+        return location == HOME;
     }
 }
@@ -8,7 +8,7 @@ public interface PegMoverInterface {
     /**
      * used to put a new piece in the game
      * @param position where the piece will be placed on the board
-     * @param peg the peg that will be placed
+     * @param owner the id of the player whose piece will be placed
      */
-    void launchPeg(int position, Peg peg);
+    void launchPeg(int position, int owner);
 }
@@ -0,0 +1,263 @@
+package edu.kit.informatik;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Counts every way a game can go on for a number of plies, to check that generating and making moves is right and to
+ * measure how fast it is. A ply is one dice roll of the player who is up and what comes of it: one of the possible
+ * moves, or passing the turn on if there is none. Every roll counts once, as if the dice were fair and nobody chose.
+ * If the game is waiting for a move, the first ply only has the moves of the roll that has already been made. Games
+ * that are won before the last ply end there and add no leaves.
+ * The leaves are also counted by what led to them: the kind of the last move, whether it sent a peg home, whether it
+ * won the game, whether the player gets to roll again afterwards, and passes.
+ * Moves of the last ply do not have to be made to count them, everything is in the move and the board; that is the
+ * bulk counting. Making them instead checks the bulk counting against {@link Game#makeMove(int)}. The plies below the
+ * first can be counted in parallel, one task for each move of the first ply.
+ */
+final class Perft {
+
+    /**
+     * The kinds of leaves, the first four being the kinds of moves in {@link Move}
+     */
+    static final int CAPTURE = 4;
+    static final int WIN = 5;
+    static final int EXTRA_ROLL = 6;
+    static final int PASS = 7;
+
+    private static final String[] KIND_NAMES = {"launch", "track", "enter", "end area", "capture", "win",
+        "extra roll", "pass"};
+
+    private final long[] counts = new long[KIND_NAMES.length];
+    private final boolean bulk;
+    private final int[][] moves;
+    private long nodes;
+    private long nanos;
+
+    /**
+     * Creates empty counts
+     * @param depth how many plies are counted
+     * @param bulk true to count the last ply straight from the moves, false to make every one of them
+     */
+    private Perft(int depth, boolean bulk) {
+        this.bulk = bulk;
+        moves = new int[depth + 1][Move.MAX_MOVES];
+    }
+
+    /**
+     * Counts every way a game can go on. The game itself is left untouched.
+     * @param game the game, which must not have ended
+     * @param depth how many plies to count, at least 1
+     * @param bulk true to count the last ply straight from the moves, false to make every one of them
+     * @param parallel true to count what follows each move of the first ply as a task of its own in the common
+     *                 fork-join pool
+     * @return the counts
+     */
+    static Perft count(Game game, int depth, boolean bulk, boolean parallel) {
+        long start = System.nanoTime();
+        Perft total = new Perft(depth, bulk);
+        Game copy = new Game(game);
+        if (parallel && depth > 1) {
+            total.countParallel(copy, depth);
+        } else if (copy.isAwaitingMove()) {
+            total.move(copy, copy.getPossibleMoves(total.moves[depth]), depth);
+        } else {
+            total.roll(copy, depth);
+        }
+        total.nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * Counts the first ply here and hands everything that follows each of its moves and passes to a task
+     * @param game the game, which is changed while counting but left as it was
+     * @param depth how many plies to count, at least 2
+     */
+    private void countParallel(Game game, int depth) {
+        List<Callable<Perft>> tasks = new ArrayList<>();
+        int[] rolled = moves[depth];
+        boolean awaitingMove = game.isAwaitingMove();
+        int firstRoll = awaitingMove ? game.getState().getRoll() : 1;
+        for (int roll = firstRoll; roll <= (awaitingMove ? firstRoll : 6); roll++) {
+            long beforeRoll = game.mark();
+            int count;
+            if (awaitingMove) {
+                count = game.getPossibleMoves(rolled);
+            } else {
+                count = game.getMoves(roll, rolled);
+                nodes++;
+            }
+            if (count == 0) {
+                Game passed = new Game(game);
+                tasks.add(() -> new Perft(depth - 1, bulk).roll(passed, depth - 1));
+            }
+            for (int i = 0; i < count; i++) {
+                long undo = game.makeMove(rolled[i]);
+                nodes++;
+                Game child = new Game(game);
+                game.unmakeMove(undo);
+                if (!child.hasEnded()) {
+                    tasks.add(() -> new Perft(depth - 1, bulk).roll(child, depth - 1));
+                }
+            }
+            game.unmakeMove(beforeRoll);
+        }
+        try {
+            for (Future<Perft> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                Perft part = result.get();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += part.counts[i];
+                }
+                nodes += part.nodes;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Counts the plies that follow a position in which the dice is about to be rolled
+     * @param game the game, which is changed while counting but left as it was
+     * @param depth how many plies to count, at least 1
+     * @return these counts, for chaining
+     */
+    private Perft roll(Game game, int depth) {
+        long beforeRoll = game.mark();
+        int[] rolled = moves[depth];
+        for (int roll = 1; roll <= 6; roll++) {
+            int count = game.getMoves(roll, rolled);
+            nodes++;
+            if (count == 0) {
+                if (depth == 1) {
+                    counts[PASS]++;
+                } else {
+                    roll(game, depth - 1);
+                }
+            } else {
+                move(game, count, depth);
+            }
+            game.unmakeMove(beforeRoll);
+        }
+        return this;
+    }
+
+    /**
+     * Counts the plies that follow each of the possible moves of a roll
+     * @param game the game, waiting for one of the moves to be made
+     * @param count how many possible moves there are
+     * @param depth how many plies to count including this one, at least 1
+     */
+    private void move(Game game, int count, int depth) {
+        int[] rolled = moves[depth];
+        if (depth == 1 && bulk) {
+            countLeaves(game.getState(), rolled, count);
+            return;
+        }
+        BoardState state = game.getState();
+        for (int i = 0; i < count; i++) {
+            long undo = game.makeMove(rolled[i]);
+            nodes++;
+            if (depth == 1) {
+                countLeaf(rolled[i], game.hasEnded(), !game.hasEnded() && state.hasExtraRoll());
+            } else if (!game.hasEnded()) {
+                roll(game, depth - 1);
+            }
+            game.unmakeMove(undo);
+        }
+    }
+
+    /**
+     * Counts the moves of the last ply without making them. A move wins if it fills the last free spot of the end
+     * area, and a 6 lets the player roll again unless it launched a peg or won.
+     * @param state the board, with the dice rolled
+     * @param rolled the possible moves
+     * @param count how many possible moves there are
+     */
+    private void countLeaves(BoardState state, int[] rolled, int count) {
+        BoardGeometry geometry = state.getGeometry();
+        int turn = state.getTurn();
+        int endArea = state.getEndArea(turn);
+        boolean six = state.getRoll() == 6;
+        for (int i = 0; i < count; i++) {
+            int move = rolled[i];
+            int kind = Move.getKind(move);
+            boolean win = false;
+            if (kind == Move.ENTER || kind == Move.END_AREA) {
+                int from = kind == Move.ENTER ? 0 : 1 << geometry.getEndSpot(Move.getFrom(move));
+                win = (endArea & ~from | 1 << geometry.getEndSpot(Move.getTo(move))) == geometry.getFullEndArea();
+            }
+            countLeaf(move, win, six && kind != Move.LAUNCH && !win);
+        }
+        nodes += count;
+    }
+
+    /**
+     * Counts a move that leads to a leaf
+     * @param move the move
+     * @param win whether it won the game
+     * @param extraRoll whether the player gets to roll again afterwards
+     */
+    private void countLeaf(int move, boolean win, boolean extraRoll) {
+        counts[Move.getKind(move)]++;
+        if (Move.isCapture(move)) {
+            counts[CAPTURE]++;
+        }
+        if (win) {
+            counts[WIN]++;
+        }
+        if (extraRoll) {
+            counts[EXTRA_ROLL]++;
+        }
+    }
+
+    /**
+     * @return how many ways the game can go on, the leaves of the tree
+     */
+    long getLeaves() {
+        return counts[Move.LAUNCH] + counts[Move.TRACK] + counts[Move.ENTER] + counts[Move.END_AREA] + counts[PASS];
+    }
+
+    /**
+     * @param kind a kind of move from {@link Move}, or {@link #CAPTURE}, {@link #WIN}, {@link #EXTRA_ROLL} or
+     *             {@link #PASS}
+     * @return how many leaves are of that kind
+     */
+    long getCount(int kind) {
+        return counts[kind];
+    }
+
+    /**
+     * @return how many positions have been visited, one after every roll and one after every move, leaves included
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return how long the counting took, in nanoseconds
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the leaves, then the leaves of each kind, then how fast it went
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("leaves ").append(getLeaves());
+        for (int i = 0; i < counts.length; i++) {
+            out.append(", ").append(KIND_NAMES[i]).append(' ').append(counts[i]);
+        }
+        return out.append(String.format(Locale.ROOT, "\n%d nodes in %.1f ms, %.0f nodes/s", nodes, nanos / 1e6,
+                nanos == 0 ? 0.0 : nodes * 1e9 / nanos)).toString();
+    }
+}
@@ -0,0 +1,63 @@
+package edu.kit.informatik;
+
+/**
+ * Keeps the text the print command shows for a board, so that printing a board that has not changed costs a few
+ * comparisons instead of writing every line again. A player's line only depends on the bits of their pegs in the
+ * {@link BoardState}, so those bits are what marks a line dirty: whatever moved a peg, be it a launch, a move on the
+ * track or in the end area or a capture, changed them. Only the lines of the players whose pegs changed are written
+ * again, each into its own buffer that is kept for the next time. The whole text is only put together again if a line
+ * or the player who is up changed.
+ * A cache belongs to a single board and is not safe to use from more than one thread at a time.
+ */
+final class PrintCache {
+
+    private final BoardState state;
+    private final StringBuilder[] lines;
+    /**
+     * The pegs of every player as they were when their line was written
+     */
+    private final long[] printedPegs;
+    private final StringBuilder text = new StringBuilder(64);
+    private int printedTurn = -1;
+    private String printed;
+
+    /**
+     * Creates an empty cache, the first call to {@link #print()} writes every line
+     * @param state the board to be printed
+     */
+    PrintCache(BoardState state) {
+        this.state = state;
+        lines = new StringBuilder[state.getNumberOfPlayers()];
+        printedPegs = new long[lines.length];
+    }
+
+    /**
+     * Gives the board the way the print command shows it, see {@link GameStateCodec#appendPrint}
+     * @return the printed board
+     */
+    String print() {
+        boolean dirty = printed == null || printedTurn != state.getTurn();
+        for (int player = 0; player < lines.length; player++) {
+            long pegs = state.getPegs(player);
+            if (lines[player] == null) {
+                lines[player] = new StringBuilder(32);
+            } else if (printedPegs[player] == pegs) {
+                continue;
+            }
+            lines[player].setLength(0);
+            GameStateCodec.appendPlayer(state, player, lines[player]);
+            printedPegs[player] = pegs;
+            dirty = true;
+        }
+        if (dirty) {
+            text.setLength(0);
+            for (StringBuilder line : lines) {
+                text.append(line).append('\n');
+            }
+            printedTurn = state.getTurn();
+            text.append(Game.getPlayerName(printedTurn));
+            printed = text.toString();
+        }
+        return printed;
+    }
+}
@@ -0,0 +1,206 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of every running {@link GameSession} by its session id. Sessions are created the first time their id
+ * is used, and the registry can be shared between any number of threads.
+ * A registry may keep a {@link Journal} for every session in a directory. A session then picks its game up from the
+ * journal when it is created, so games survive both the program and sessions that are dropped for being idle.
+ */
+final class SessionRegistry {
+
+    private final ConcurrentMap<String, GameSession> sessions = new ConcurrentHashMap<>();
+    private final Path journalDirectory;
+    private final Journal.Sync sync;
+
+    /**
+     * Creates a registry that keeps no journals
+     */
+    SessionRegistry() {
+        this(null, Journal.Sync.NEVER);
+    }
+
+    /**
+     * Creates a registry that keeps a journal for every session
+     * @param journalDirectory where the journals go, null for no journals
+     * @param sync when the journals are forced onto the disk
+     */
+    SessionRegistry(Path journalDirectory, Journal.Sync sync) {
+        this.journalDirectory = journalDirectory;
+        this.sync = sync;
+    }
+
+    /**
+     * Brings back every session with a game in progress from the journal directory
+     * @return how many sessions have been brought back
+     * @throws IOException if the directory or a journal can't be read
+     */
+    int recover() throws IOException {
+        if (journalDirectory == null) {
+            return 0;
+        }
+        Files.createDirectories(journalDirectory);
+        int recovered = 0;
+        for (String sessionId : Journal.list(journalDirectory)) {
+            try {
+                GameSession session = get(sessionId);
+                if (session.getGame() == null) {
+                    sessions.computeIfPresent(sessionId, (id, idle) -> {
+                        close(idle);
+                        return null;
+                    });
+                } else {
+                    recovered++;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * Returns the session with the given id, creating it if it doesn't exist yet.
+     * @param sessionId the id of the session
+     * @return the session
+     * @throws UncheckedIOException if the session's journal can't be opened or read
+     */
+    GameSession get(String sessionId) {
+        GameSession session = sessions.get(sessionId);
+        if (session == null) {
+            session = sessions.computeIfAbsent(sessionId, this::create);
+        }
+        return session;
+    }
+
+    /**
+     * Returns the session with the given id, creating it if it doesn't exist yet, and notes the id if it was created
+     * @param sessionId the id of the session
+     * @param created where the id goes if the session was created by this call
+     * @return the session
+     * @throws UncheckedIOException if the session's journal can't be opened or read
+     */
+    GameSession get(String sessionId, Set<String> created) {
+        GameSession session = sessions.get(sessionId);
+        if (session == null) {
+            session = sessions.computeIfAbsent(sessionId, id -> {
+                GameSession fresh = create(id);
+                created.add(id);
+                return fresh;
+            });
+        }
+        return session;
+    }
+
+    /**
+     * Creates a session, with its journal if there are journals
+     * @param sessionId the id of the session
+     * @return the session, with the game from the journal if there is one
+     */
+    private GameSession create(String sessionId) {
+        if (journalDirectory == null) {
+            return new GameSession(sessionId);
+        }
+        try {
+            Files.createDirectories(journalDirectory);
+            Journal journal = Journal.open(journalDirectory, sessionId, sync);
+            try {
+                Game game = Journal.replay(journalDirectory, sessionId, Long.MAX_VALUE);
+                return new GameSession(sessionId, journal, game);
+            } catch (IOException e) {
+                journal.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the session with the given id without creating it.
+     * @param sessionId the id of the session
+     * @return the session, null if there is none with that id
+     */
+    GameSession find(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Drops the session with the given id, along with whatever game was in progress in it.
+     * @param sessionId the id of the session
+     */
+    void remove(String sessionId) {
+        // the journal is closed while the id is still locked in the map, so a new session can't open it at the same time
+        sessions.computeIfPresent(sessionId, (id, session) -> {
+            session.resetGame();
+            close(session);
+            return null;
+        });
+    }
+
+    /**
+     * Drops those of the given sessions that have not been used for a while. Their games stay in their journals, if
+     * there are any. Sessions that are not among the given ones, like the console's, are never dropped.
+     * @param maxIdleMillis how long a session may go without commands before it is dropped, in milliseconds
+     * @param sessionIds the ids of the sessions that may be dropped. The ids of dropped sessions and of sessions that
+     *                   no longer exist are taken out.
+     * @return how many sessions have been dropped
+     */
+    int removeIdle(long maxIdleMillis, Set<String> sessionIds) {
+        long limit = System.currentTimeMillis() - maxIdleMillis;
+        int[] removed = new int[1];
+        for (String sessionId : sessionIds) {
+            GameSession kept = sessions.computeIfPresent(sessionId, (id, session) -> {
+                if (session.getLastAccess() >= limit) {
+                    return session;
+                }
+                close(session);
+                removed[0]++;
+                return null;
+            });
+            if (kept == null) {
+                sessionIds.remove(sessionId);
+            }
+        }
+        return removed[0];
+    }
+
+    /**
+     * Writes out whatever the journal of a session has not written yet. Only that session is locked, so a search that
+     * is running in another one does not hold the caller up.
+     * @param sessionId the id of the session
+     * @throws IOException if writing fails
+     */
+    void flush(String sessionId) throws IOException {
+        GameSession session = find(sessionId);
+        if (session != null) {
+            session.flush();
+        }
+    }
+
+    /**
+     * Closes the journal of a session that has been dropped
+     * @param session the session
+     */
+    private static void close(GameSession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return how many sessions there are
+     */
+    int size() {
+        return sessions.size();
+    }
+}
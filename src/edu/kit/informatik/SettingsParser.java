@@ -0,0 +1,277 @@
+package edu.kit.informatik;
+
+/**
+ * Reads the custom start settings of a game in a single pass over the characters, straight into a
+ * {@link BoardState}. The settings list the positions of every player's pegs, the players separated by ';' and the
+ * pegs by ','. How many players and pegs there are and how long the track is depends on the {@link BoardGeometry}.
+ * A position is a square number, "S" for home or an end area spot, the latter two followed by the player's letter.
+ * Settings are rejected if they
+ * - do not match that pattern
+ * - put two pegs on the same spot that is not a player's home area
+ * - describe a game that has no playable moves left, because a player already has all their pegs in the end area
+ * When settings are rejected, the parser tells where and why.
+ * Settings that have been read successfully are kept in a small cache, so that starting many games from the same
+ * position only reads it once.
+ */
+final class SettingsParser {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final CacheEntry[] CACHE = new CacheEntry[CACHE_SIZE];
+
+    private final BoardGeometry geometry;
+    private CharSequence settings;
+    private int index;
+    private int errorIndex;
+    private String error;
+
+    /**
+     * Creates a parser for a board of the given shape
+     * @param geometry the shape of the board
+     */
+    SettingsParser(BoardGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    /**
+     * Reads start settings, using the cache of recently read settings. The board that is returned is shared with
+     * the cache and must not be changed, it is meant to be copied, for example by {@link Game#Game(BoardState)}.
+     * @param geometry the shape of the board
+     * @param settings the raw settings string
+     * @return the board described by the settings, null if the settings are invalid
+     */
+    static BoardState parseCached(BoardGeometry geometry, String settings) {
+        return parseCached(settings, new SettingsParser(geometry));
+    }
+
+    /**
+     * Reads start settings, using the cache of recently read settings, see {@link #parseCached(BoardGeometry,
+     * String)}. Settings that are not in the cache are read by the given parser, so if they are invalid, the parser
+     * tells where and why.
+     * @param settings the raw settings string
+     * @param parser the parser for the shape of the board
+     * @return the board described by the settings, null if the settings are invalid
+     */
+    static BoardState parseCached(String settings, SettingsParser parser) {
+        BoardGeometry geometry = parser.geometry;
+        int slot = (settings.hashCode() ^ geometry.hashCode()) & (CACHE_SIZE - 1);
+        CacheEntry entry = CACHE[slot];
+        if (entry != null && entry.state.getGeometry() == geometry && entry.settings.equals(settings)) {
+            return entry.state;
+        }
+        BoardState state = parser.parse(settings);
+        if (state != null) {
+            CACHE[slot] = new CacheEntry(settings, state);
+        }
+        return state;
+    }
+
+    /**
+     * Reads start settings. A parser can be used any number of times, but only by one thread at a time.
+     * @param settings the raw settings
+     * @return the board described by the settings, null if the settings are invalid
+     */
+    BoardState parse(CharSequence settings) {
+        BoardState state = start(settings);
+        if (!readPlayers(state, ';', false)) {
+            return null;
+        }
+        if (index != settings.length()) {
+            return fail(index, "unexpected characters after the last position");
+        }
+        return state;
+    }
+
+    /**
+     * Reads a board in the format the print command shows it: one line per player with the positions of their pegs,
+     * then a line with the name of the player who is up. Unlike start settings, a player may have already won.
+     * @param text the printed board
+     * @return the board, null if the text is not a printed board
+     */
+    BoardState parsePrint(CharSequence text) {
+        BoardState state = start(text);
+        if (!readPlayers(state, '\n', true) || !expect('\n')) {
+            return null;
+        }
+        for (int player = 0; player < geometry.getPlayers(); player++) {
+            String name = Game.getPlayerName(player);
+            if (text.length() - index == name.length() && startsWith(name)) {
+                state.setTurn(player);
+                return state;
+            }
+        }
+        return fail(index, "expected the name of a player");
+    }
+
+    /**
+     * Gets ready to read new text
+     * @param text the text
+     * @return an empty board to be filled
+     */
+    private BoardState start(CharSequence text) {
+        settings = text;
+        index = 0;
+        errorIndex = -1;
+        error = null;
+        return new BoardState(geometry);
+    }
+
+    /**
+     * Reads the positions of every player's pegs
+     * @param state the board the pegs are placed on
+     * @param separator what comes between two players
+     * @param mayHaveWon whether a player may have all their pegs in the end area already
+     * @return true if the positions were valid, false if not
+     */
+    private boolean readPlayers(BoardState state, char separator, boolean mayHaveWon) {
+        for (int player = 0; player < geometry.getPlayers(); player++) {
+            int groupStart = index;
+            char playerChar = Game.getPlayerChar(player);
+
+            for (int peg = 0; peg < geometry.getPegs(); peg++) {
+                if (peg > 0 && !expect(',')) {
+                    return false;
+                }
+                int tokenStart = index;
+                int location = readPosition(playerChar);
+                if (location == Peg.NOWHERE) {
+                    return false;
+                } else if (Peg.isHome(location)) {
+                    continue;
+                } else if (geometry.hasArrived(location) ? state.isAt(player, location)
+                        : state.getOccupant(location) != -1) {
+                    fail(tokenStart, "two pegs on the same spot");
+                    return false;
+                }
+                state.place(player, location);
+            }
+
+            if (!mayHaveWon && state.getEndArea(player) == geometry.getFullEndArea()) {
+                fail(groupStart, Game.getPlayerName(player) + " has already won");
+                return false;
+            }
+            if (player < geometry.getPlayers() - 1 && !expect(separator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return where the last settings that were read went wrong, -1 if they were fine
+     */
+    int getErrorIndex() {
+        return errorIndex;
+    }
+
+    /**
+     * @return why the last settings that were read went wrong, null if they were fine
+     */
+    String getError() {
+        return error;
+    }
+
+    /**
+     * Reads one position
+     * @param playerChar the letter of the player the peg belongs to
+     * @return the location code, {@link Peg#NOWHERE} if there is no valid position
+     */
+    private int readPosition(char playerChar) {
+        int start = index;
+        char first = peek();
+        if (first == 'S' || (first >= 'A' && first < 'A' + geometry.getPegs())) {
+            index++;
+            if (peek() != playerChar) {
+                fail(index, "expected '" + playerChar + "'");
+                return Peg.NOWHERE;
+            }
+            index++;
+            return first == 'S' ? Peg.HOME : geometry.inEndArea(first - 'A');
+        } else if (first < '0' || first > '9') {
+            fail(index, "expected a position");
+            return Peg.NOWHERE;
+        }
+
+        int square = 0;
+        while (peek() >= '0' && peek() <= '9') {
+            if (index > start && square == 0) {
+                fail(start, "square numbers must not start with 0");
+                return Peg.NOWHERE;
+            }
+            square = square * 10 + (settings.charAt(index++) - '0');
+            if (square >= geometry.getPathLength()) {
+                fail(start, "there is no square " + square);
+                return Peg.NOWHERE;
+            }
+        }
+        return square;
+    }
+
+    /**
+     * Reads a separator
+     * @param separator the separator that has to come next
+     * @return true if it was there, false if not
+     */
+    private boolean expect(char separator) {
+        if (peek() != separator) {
+            fail(index, "expected '" + separator + "'");
+            return false;
+        }
+        index++;
+        return true;
+    }
+
+    /**
+     * Checks whether the text goes on with the given characters
+     * @param expected the characters
+     * @return true if it does, false if not
+     */
+    private boolean startsWith(String expected) {
+        if (settings.length() - index < expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (settings.charAt(index + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the next character, or 0 if there are no characters left
+     */
+    private char peek() {
+        return index < settings.length() ? settings.charAt(index) : 0;
+    }
+
+    /**
+     * Remembers what went wrong
+     * @param at the index of the character where it went wrong
+     * @param reason what went wrong
+     * @return null, so that callers can return it right away
+     */
+    private BoardState fail(int at, String reason) {
+        errorIndex = at;
+        error = reason;
+        return null;
+    }
+
+    /**
+     * A cached pair of settings and the board they describe. Entries are immutable, so they can be shared between
+     * threads without locking.
+     */
+    private static final class CacheEntry {
+
+        private final String settings;
+        private final BoardState state;
+
+        /**
+         * @param settings the raw settings
+         * @param state the board they describe
+         */
+        private CacheEntry(String settings, BoardState state) {
+            this.settings = settings;
+            this.state = state;
+        }
+    }
+}
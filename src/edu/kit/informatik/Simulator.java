@@ -0,0 +1,313 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Plays complete games on its own, with random dice and a {@link MovePicker} making the choices, and reports how fast
+ * that went and how the games turned out. The games are spread over a fork-join pool. Every worker gets its own random
+ * number generator, split off from a single seed before anything runs, so a run with the same seed, settings and
+ * number of workers always ends with the same results.
+ */
+final class Simulator {
+
+    /**
+     * Games that are still going after this many dice rolls are given up on and counted as unfinished.
+     */
+    static final int MAX_ROLLS = 100000;
+
+    private final BoardGeometry geometry;
+    private final String settings;
+    private final MovePicker picker;
+    private final long seed;
+    private final int workers;
+
+    /**
+     * Creates a simulator
+     * @param geometry the shape of the board the games are played on
+     * @param settings the start settings in the same format as the start command takes them, null for the default
+     *                 start where every piece is at home
+     * @param picker decides which moves are made
+     * @param seed the seed of all dice rolls and random choices
+     * @param workers how many games are played in parallel
+     */
+    Simulator(BoardGeometry geometry, String settings, MovePicker picker, long seed, int workers) {
+        if (settings != null && Game.withSettings(geometry, settings) == null) {
+            throw new IllegalArgumentException("invalid start settings: " + settings);
+        }
+        this.geometry = geometry;
+        this.settings = settings;
+        this.picker = picker;
+        this.seed = seed;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Plays the given number of games and collects the results
+     * @param games how many games are played
+     * @return the results
+     */
+    Report run(int games) {
+        return run(games, null);
+    }
+
+    /**
+     * Plays the given number of games, collects the results and adds every game to a store
+     * @param games how many games are played
+     * @param store where the games are recorded, null if they are not
+     * @return the results
+     */
+    Report run(int games, GameStore.Writer store) {
+        if (store != null && store.getGeometry() != geometry) {
+            throw new IllegalArgumentException("the store is for a board of another shape: " + store.getGeometry());
+        }
+        SplittableRandom root = new SplittableRandom(seed);
+        List<Callable<Report>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final SplittableRandom random = root.split();
+            final int share = games / workers + (w < games % workers ? 1 : 0);
+            tasks.add(() -> play(share, random, store));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        long start = System.nanoTime();
+        Report total = new Report(geometry.getPlayers());
+        try {
+            for (Future<Report> result : pool.invokeAll(tasks)) {
+                total.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        total.nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * Plays games one after the other on the calling thread
+     * @param games how many games are played
+     * @param random the random number generator of this worker
+     * @param store where the games are recorded, null if they are not
+     * @return the results of these games
+     * @throws IOException if recording a game fails
+     */
+    private Report play(int games, SplittableRandom random, GameStore.Writer store) throws IOException {
+        Report report = new Report(geometry.getPlayers());
+        int[] moves = new int[Move.MAX_MOVES];
+        GameRecord record = store == null ? null : new GameRecord();
+        for (int g = 0; g < games; g++) {
+            Game game = settings == null ? new Game(geometry) : Game.withSettings(geometry, settings);
+            if (record != null) {
+                record.start(game);
+            }
+            int rolls = 0;
+            while (!game.hasEnded() && rolls < MAX_ROLLS) {
+                int roll = random.nextInt(6) + 1;
+                int count = game.getMoves(roll, moves);
+                rolls++;
+                int move = count > 0 ? picker.pick(game, moves, count, random) : Move.NONE;
+                if (record != null) {
+                    record.addTurn(game, roll, move);
+                }
+                if (count > 0) {
+                    game.executeMove(move);
+                    report.moves++;
+                }
+            }
+            if (record != null) {
+                record.finish(game);
+                store.append(record);
+            }
+            report.rolls += rolls;
+            if (game.hasEnded()) {
+                report.wins[game.getTurn()]++;
+                report.lengths[Math.min(rolls, Report.LONGEST)]++;
+                report.finishedRolls += rolls;
+            } else {
+                report.unfinished++;
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Plays a batch of games and prints the report.
+     * @param args the number of games, optionally followed by the seed, the start settings ("-" for the default ones),
+     *             the shape of the board the way the board command takes it and a file every game is recorded in, see
+     *             {@link GameStore}
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        String settings = args.length > 2 && !args[2].equals("-") ? args[2] : null;
+        BoardGeometry geometry = args.length > 3 ? BoardGeometry.parse(args[3]) : BoardGeometry.CLASSIC;
+        if (geometry == null) {
+            throw new IllegalArgumentException("invalid board: " + args[3]);
+        }
+        Simulator simulator = new Simulator(geometry, settings, MovePicker.RANDOM, seed,
+                Runtime.getRuntime().availableProcessors());
+        if (args.length <= 4) {
+            Terminal.printLine(simulator.run(games));
+            return;
+        }
+        try (GameStore.Writer store = GameStore.create(Paths.get(args[4]), geometry)) {
+            Terminal.printLine(simulator.run(games, store));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The combined results of a number of simulated games
+     */
+    static final class Report {
+
+        /**
+         * Game lengths are counted exactly up to this many dice rolls, longer games all land in the last bucket.
+         */
+        static final int LONGEST = 4096;
+
+        private final long[] wins;
+        private final long[] lengths = new long[LONGEST + 1];
+        private long unfinished;
+        private long rolls;
+        /**
+         * The dice rolls of the finished games alone, which the game lengths are about
+         */
+        private long finishedRolls;
+        private long moves;
+        private long nanos;
+
+        /**
+         * Creates an empty report
+         * @param players how many players take part in the games
+         */
+        private Report(int players) {
+            wins = new long[players];
+        }
+
+        /**
+         * Adds another report's numbers to this one
+         * @param other the other report
+         */
+        private void add(Report other) {
+            for (int i = 0; i < wins.length; i++) {
+                wins[i] += other.wins[i];
+            }
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] += other.lengths[i];
+            }
+            unfinished += other.unfinished;
+            rolls += other.rolls;
+            finishedRolls += other.finishedRolls;
+            moves += other.moves;
+        }
+
+        /**
+         * @return how many games have been finished
+         */
+        long getFinishedGames() {
+            long finished = 0;
+            for (long win : wins) {
+                finished += win;
+            }
+            return finished;
+        }
+
+        /**
+         * @param player the player's id
+         * @return how many games the player has won
+         */
+        long getWins(int player) {
+            return wins[player];
+        }
+
+        /**
+         * @return how many games have been given up on after {@link #MAX_ROLLS} dice rolls
+         */
+        long getUnfinishedGames() {
+            return unfinished;
+        }
+
+        /**
+         * @return how many moves have been made in all games together
+         */
+        long getMoves() {
+            return moves;
+        }
+
+        /**
+         * @return how many times the dice has been rolled in all games together
+         */
+        long getRolls() {
+            return rolls;
+        }
+
+        /**
+         * Returns the length of a finished game that a given share of all finished games does not exceed
+         * @param quantile the share, between 0 and 1
+         * @return the game length in dice rolls
+         */
+        int getLengthQuantile(double quantile) {
+            long rank = (long) Math.ceil(quantile * getFinishedGames());
+            long seen = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                seen += lengths[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return i;
+                }
+            }
+            return LONGEST;
+        }
+
+        /**
+         * @return how many dice rolls a finished game took on average, 0 if no game has been finished
+         */
+        double getMeanLength() {
+            long finished = getFinishedGames();
+            return finished == 0 ? 0.0 : (double) finishedRolls / finished;
+        }
+
+        /**
+         * @return how long the simulation took, in seconds
+         */
+        double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            long finished = getFinishedGames();
+            long games = finished + unfinished;
+            double seconds = Math.max(getSeconds(), 1e-9);
+            String text = String.format(Locale.ROOT, "%d games in %.3f s: %.0f games/s, %.0f moves/s, %.0f rolls/s%n",
+                    games, seconds, games / seconds, moves / seconds, rolls / seconds);
+            for (int i = 0; i < wins.length; i++) {
+                text = text.concat(String.format(Locale.ROOT, "%s wins %.2f%%%n", Game.getPlayerName(i),
+                        finished == 0 ? 0.0 : 100.0 * wins[i] / finished));
+            }
+            if (unfinished > 0) {
+                text = text.concat(String.format(Locale.ROOT, "%d games unfinished after %d rolls%n", unfinished,
+                        MAX_ROLLS));
+            }
+            return text.concat(String.format(Locale.ROOT,
+                    "rolls per finished game: min %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d, mean %.1f",
+                    getLengthQuantile(0), getLengthQuantile(0.1), getLengthQuantile(0.5), getLengthQuantile(0.9),
+                    getLengthQuantile(0.99), getLengthQuantile(1), getMeanLength()));
+        }
+    }
+}
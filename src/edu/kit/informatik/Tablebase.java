@@ -0,0 +1,331 @@
+package edu.kit.informatik;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exact answers for the race to the end area. For every way a single player's pegs can be spread over home, the
+ * gameBoard and the end area, the table holds the expected number of turns the player needs to bring all of them into
+ * the end area when nobody gets in the way and every move is the best one. The rules are the ones of
+ * {@link MoveGenerator} and {@link Game}: a launch ends the turn, any other move on a 6 gives another roll.
+ * The table is made for the {@link BoardGeometry#CLASSIC} board.
+ * Pegs are counted from the player's own start square, so one table serves every player. A spread of pegs is a mask of
+ * up to four locations out of the track and the end area, and its index in the table is its rank among all such
+ * masks. That makes a lookup a rank and a single read.
+ * The table is written to a file once by {@link #main(String[])}, and read by mapping the file into memory, so it
+ * never takes up any heap. The file is mapped in chunks, so it may be larger than a single buffer can hold.
+ */
+final class Tablebase {
+
+    /**
+     * The first bytes of every tablebase file, "MADNTB" and a format version
+     */
+    private static final long MAGIC = 0x4D41444E54420001L;
+    private static final int HEADER_BYTES = 16;
+    /**
+     * Each mapped chunk holds 2^CHUNK_SHIFT entries
+     */
+    private static final int CHUNK_SHIFT = 28;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    private static final BoardGeometry GEOMETRY = BoardGeometry.CLASSIC;
+    private static final int LOCATIONS = GEOMETRY.getLocations();
+    /**
+     * BINOMIAL[n][k] is n choose k
+     */
+    private static final long[][] BINOMIAL = new long[LOCATIONS + 1][GEOMETRY.getPegs() + 2];
+    /**
+     * OFFSET[k] is the index of the first mask with k pegs
+     */
+    private static final long[] OFFSET = new long[GEOMETRY.getPegs() + 2];
+    private static final long TRACK_MASK = GEOMETRY.getTrackMask();
+
+    static {
+        for (int n = 0; n <= LOCATIONS; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k < BINOMIAL[n].length; k++) {
+                BINOMIAL[n][k] = n == 0 ? 0 : BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+        for (int k = 1; k < OFFSET.length; k++) {
+            OFFSET[k] = OFFSET[k - 1] + BINOMIAL[LOCATIONS][k - 1];
+        }
+    }
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    /**
+     * Creates a table from the chunks of a mapped file
+     * @param chunks the mapped chunks, all but the last one full
+     * @param size how many entries there are
+     */
+    private Tablebase(MappedByteBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * @return how many entries a complete table has
+     */
+    static long getSize() {
+        return OFFSET[GEOMETRY.getPegs() + 1];
+    }
+
+    /**
+     * Maps a tablebase file into memory
+     * @param file the file written by {@link #write(Path)}
+     * @return the table
+     * @throws IOException if the file can't be read or is not a tablebase
+     */
+    static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC) {
+                throw new IOException("not a tablebase file: " + file);
+            }
+            long size = header.getLong();
+            if (size != getSize() || channel.size() < HEADER_BYTES + size * Float.BYTES) {
+                throw new IOException("tablebase file does not fit these rules: " + file);
+            }
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long first = (long) i << CHUNK_SHIFT;
+                long entries = Math.min(size - first, 1L << CHUNK_SHIFT);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * Float.BYTES,
+                        entries * Float.BYTES);
+            }
+            // the mapping stays valid after the channel is closed
+            return new Tablebase(chunks, size);
+        }
+    }
+
+    /**
+     * Looks up how many turns a player still needs to finish on their own
+     * @param state the board, a classic one
+     * @param player the player's id
+     * @return the expected number of turns, 0 if the player has already finished
+     */
+    float getExpectedTurns(BoardState state, int player) {
+        return get(index(relativeMask(state, player)));
+    }
+
+    /**
+     * Reads an entry
+     * @param index the index of the entry, see {@link #index(long)}
+     * @return the expected number of turns
+     */
+    float get(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].getFloat((int) (index & CHUNK_MASK) * Float.BYTES);
+    }
+
+    /**
+     * Turns a player's pegs into locations counted from the player's start square, which is what the table is made for
+     * @param state the board, a classic one
+     * @param player the player's id
+     * @return the mask of the player's pegs as if the player started on square 0
+     */
+    static long relativeMask(BoardState state, int player) {
+        int pathLength = GEOMETRY.getPathLength();
+        int start = GEOMETRY.getStartIndex(player);
+        long track = state.getTrack(player);
+        long relative = start == 0 ? track : (track >>> start | track << (pathLength - start)) & TRACK_MASK;
+        return relative | state.getPegs(player) & ~TRACK_MASK;
+    }
+
+    /**
+     * Finds the index of a spread of pegs: the number of masks with fewer pegs, plus the rank of the mask among those
+     * with as many pegs, in the combinatorial number system.
+     * @param mask locations counted from the start square, at most as many as a player has pegs
+     * @return the index
+     */
+    static long index(long mask) {
+        int pegs = Long.bitCount(mask);
+        long index = OFFSET[pegs];
+        int k = 1;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            index += BINOMIAL[Long.numberOfTrailingZeros(bits)][k++];
+        }
+        return index;
+    }
+
+    /**
+     * Works the whole table out and writes it to a file.
+     * The value of a spread depends on the spreads its moves lead to, and every move takes a peg further, so spreads
+     * are solved from the most advanced to the least advanced. Rolls without any possible move leave the spread as it
+     * is and cost a turn, which is solved in closed form: with n such rolls out of 6 and the rest adding up to s,
+     * v = (s + n) / (6 - n).
+     * @param file where the table goes
+     * @throws IOException if writing fails
+     */
+    static void write(Path file) throws IOException {
+        float[] values = solve();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+            buffer.putLong(MAGIC).putLong(values.length);
+            for (float value : values) {
+                if (buffer.remaining() < Float.BYTES) {
+                    drain(channel, buffer);
+                }
+                buffer.putFloat(value);
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes out everything in a buffer and empties it
+     * @param channel where the bytes go
+     * @param buffer the bytes
+     * @throws IOException if writing fails
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Works the values of every spread out
+     * @return the values, by index
+     */
+    private static float[] solve() {
+        int numberOfPegs = GEOMETRY.getPegs();
+        long[] masks = new long[(int) getSize()];
+        int[] progress = new int[masks.length];
+        int count = collect(0, 0, numberOfPegs, masks, 0);
+
+        // sort by progress, most advanced first, with a counting sort
+        int maxProgress = 0;
+        for (int i = 0; i < count; i++) {
+            progress[i] = progressOf(masks[i]);
+            maxProgress = Math.max(maxProgress, progress[i]);
+        }
+        int[] starts = new int[maxProgress + 2];
+        for (int i = 0; i < count; i++) {
+            starts[maxProgress - progress[i] + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[starts[maxProgress - progress[i]]++] = masks[i];
+        }
+
+        float[] values = new float[count];
+        int[] moves = new int[Move.MAX_MOVES];
+        int fullEndArea = (1 << numberOfPegs) - 1;
+        for (long mask : order) {
+            BoardState state = new BoardState(GEOMETRY);
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                state.place(0, Long.numberOfTrailingZeros(bits));
+            }
+            if (state.getEndArea(0) == fullEndArea) {
+                continue;
+            }
+            Game game = new Game(state);
+            BoardState next = game.getState();
+            long beforeRoll = game.mark();
+            double sum = 0;
+            int idle = 0;
+            for (int roll = 1; roll <= 6; roll++) {
+                int possible = game.getMoves(roll, moves);
+                if (possible == 0) {
+                    game.unmakeMove(beforeRoll);
+                    idle++;
+                    continue;
+                }
+                double best = Double.MAX_VALUE;
+                for (int i = 0; i < possible; i++) {
+                    long undo = game.makeMove(moves[i]);
+                    // the turn goes on after a 6 unless the peg was launched or the player is done
+                    double turns = game.hasEnded() ? 1
+                            : (next.hasExtraRoll() ? 0 : 1) + values[(int) index(next.getPegs(0))];
+                    game.unmakeMove(undo);
+                    best = Math.min(best, turns);
+                }
+                game.unmakeMove(beforeRoll);
+                sum += best;
+            }
+            values[(int) index(mask)] = idle == 6 ? Float.POSITIVE_INFINITY : (float) ((sum + idle) / (6 - idle));
+        }
+        return values;
+    }
+
+    /**
+     * Lists every mask with at most the given number of locations, all of them at or above the given location
+     * @param from the lowest location that may be used
+     * @param mask the locations chosen so far
+     * @param left how many more locations may be chosen
+     * @param masks where the masks go
+     * @param count how many masks have been listed so far
+     * @return how many masks have been listed now
+     */
+    private static int collect(int from, long mask, int left, long[] masks, int count) {
+        masks[count++] = mask;
+        if (left > 0) {
+            for (int location = from; location < LOCATIONS; location++) {
+                count = collect(location + 1, mask | 1L << location, left - 1, masks, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds up how far the pegs of a spread have come, one for every square and spot
+     * @param mask locations counted from the start square
+     * @return the sum over all pegs that are not at home
+     */
+    private static int progressOf(long mask) {
+        int progress = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            progress += Long.numberOfTrailingZeros(bits) + 1;
+        }
+        return progress;
+    }
+
+    /**
+     * Writes the tablebase file, and shows what the search makes of a race with and without it: every player has all
+     * but one peg in the end area and the last one just before it, except for A, whose last peg is 9 squares further
+     * back
+     * @param args the path of the file, "tablebase.bin" if none is given
+     * @throws IOException if writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "tablebase.bin");
+        long start = System.nanoTime();
+        write(file);
+        Tablebase table = open(file);
+        BoardState empty = new BoardState(GEOMETRY);
+        Terminal.printLine(table.size + " entries in " + (System.nanoTime() - start) / 1_000_000 + " ms, "
+                + table.getExpectedTurns(empty, 0) + " turns from the start");
+
+        int pathLength = GEOMETRY.getPathLength();
+        BoardState race = new BoardState(GEOMETRY);
+        for (int player = 0; player < race.getNumberOfPlayers(); player++) {
+            for (int spot = 0; spot < GEOMETRY.getPegs() - 1; spot++) {
+                race.place(player, pathLength + spot);
+            }
+            int behind = player == 0 ? 10 : 1;
+            race.place(player, (GEOMETRY.getStartIndex(player) + pathLength - behind) % pathLength);
+        }
+        Terminal.printLine("race: " + Evaluation.isRace(race) + ", A's turns " + table.getExpectedTurns(race, 0)
+                + ", value for A " + Evaluation.DEFAULT.withTablebase(table).evaluate(race, 0) + " with the table, "
+                + Evaluation.DEFAULT.evaluate(race, 0) + " without");
+    }
+}
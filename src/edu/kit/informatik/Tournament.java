@@ -0,0 +1,335 @@
+package edu.kit.informatik;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets strategies (see {@link MovePicker}) play against each other and reports how often each of them wins. Where a
+ * player sits matters, since the first player to roll has an edge, so the same games are played in every seating:
+ * with as many strategies as seats or fewer, every way to seat them in which each of them plays; with more strategies
+ * than seats, every way to seat a different strategy on each seat. That way every strategy sits on every seat equally
+ * often.
+ * Game number i of every seating rolls its dice from the same seed, so a run with the same seed always ends with the
+ * same results, however many workers play it. Games vary a lot in length, so the workers do not split the games up
+ * front but keep taking small blocks of games from a shared counter until none are left, and none of them sits idle
+ * while another one still has a long queue.
+ */
+final class Tournament {
+
+    /**
+     * How many games of a seating a worker takes at a time
+     */
+    static final int BLOCK = 64;
+
+    private final BoardGeometry geometry;
+    private final String[] names;
+    private final MovePicker[] pickers;
+    private final int[][] seatings;
+    private final long seed;
+    private final int workers;
+
+    /**
+     * Creates a tournament
+     * @param geometry the shape of the board the games are played on
+     * @param names the names of the strategies, for the report
+     * @param pickers the strategies, at least two
+     * @param seed the seed of all dice rolls and random choices
+     * @param workers how many games are played in parallel
+     */
+    Tournament(BoardGeometry geometry, String[] names, MovePicker[] pickers, long seed, int workers) {
+        if (pickers.length < 2 || names.length != pickers.length) {
+            throw new IllegalArgumentException("a tournament needs at least two strategies, each with a name");
+        }
+        this.geometry = geometry;
+        this.names = names.clone();
+        this.pickers = pickers.clone();
+        this.seed = seed;
+        this.workers = Math.max(1, workers);
+        seatings = seatings(pickers.length, geometry.getPlayers());
+    }
+
+    /**
+     * Lists the seatings
+     * @param entrants how many strategies take part
+     * @param seats how many players a game has
+     * @return for every seating, which strategy sits on each seat
+     */
+    static int[][] seatings(int entrants, int seats) {
+        List<int[]> seatings = new ArrayList<>();
+        seat(new int[seats], 0, entrants, seatings);
+        return seatings.toArray(new int[seatings.size()][]);
+    }
+
+    /**
+     * Seats strategies on the seats that are left and collects every seating that is complete
+     * @param seating the strategies seated so far
+     * @param seat the first seat that is left
+     * @param entrants how many strategies take part
+     * @param seatings where the complete seatings go
+     */
+    private static void seat(int[] seating, int seat, int entrants, List<int[]> seatings) {
+        if (seat == seating.length) {
+            int seated = 0;
+            for (int entrant : seating) {
+                seated |= 1 << entrant;
+            }
+            if (Integer.bitCount(seated) == Math.min(entrants, seating.length)) {
+                seatings.add(seating.clone());
+            }
+            return;
+        }
+        for (int entrant = 0; entrant < entrants; entrant++) {
+            seating[seat] = entrant;
+            seat(seating, seat + 1, entrants, seatings);
+        }
+    }
+
+    /**
+     * @return how many seatings the strategies are played in
+     */
+    int getSeatings() {
+        return seatings.length;
+    }
+
+    /**
+     * Plays the given number of games in every seating and collects the results
+     * @param games how many games are played in each seating
+     * @return the results
+     */
+    Report run(int games) {
+        int blocksPerSeating = (games + BLOCK - 1) / BLOCK;
+        int blocks = blocksPerSeating * seatings.length;
+        AtomicInteger nextBlock = new AtomicInteger();
+        List<Callable<Report>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                Report report = new Report(names, geometry.getPlayers());
+                for (int block = nextBlock.getAndIncrement(); block < blocks; block = nextBlock.getAndIncrement()) {
+                    int first = block % blocksPerSeating * BLOCK;
+                    play(seatings[block / blocksPerSeating], first, Math.min(first + BLOCK, games), report);
+                }
+                return report;
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        long start = System.nanoTime();
+        Report total = new Report(names, geometry.getPlayers());
+        try {
+            for (Future<Report> result : pool.invokeAll(tasks)) {
+                total.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        total.nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * Plays a block of games of one seating on the calling thread
+     * @param seating which strategy sits on each seat
+     * @param first the number of the first game of the block
+     * @param end the number of the first game after the block
+     * @param report where the results go
+     */
+    private void play(int[] seating, int first, int end, Report report) {
+        int[] moves = new int[Move.MAX_MOVES];
+        for (int g = first; g < end; g++) {
+            // splitting mixes the seed and picks a step of its own, unlike consecutive seeds whose streams overlap
+            SplittableRandom random = new SplittableRandom(seed + g).split();
+            Game game = new Game(geometry);
+            int rolls = 0;
+            while (!game.hasEnded() && rolls < Simulator.MAX_ROLLS) {
+                int count = game.getMoves(random.nextInt(6) + 1, moves);
+                rolls++;
+                if (count > 0) {
+                    game.executeMove(pickers[seating[game.getTurn()]].pick(game, moves, count, random));
+                }
+            }
+            report.games++;
+            report.rolls += rolls;
+            for (int entrant : seating) {
+                report.seats[entrant]++;
+            }
+            if (game.hasEnded()) {
+                report.wins[seating[game.getTurn()]]++;
+                report.seatWins[game.getTurn()]++;
+            } else {
+                report.unfinished++;
+            }
+        }
+    }
+
+    /**
+     * Plays a tournament and prints the report.
+     * @param args the number of games per seating, optionally followed by the seed, the strategies separated by ','
+     *             (see {@link MovePicker#byName(String)}, all of them by default) and the shape of the board the way
+     *             the board command takes it
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        String[] names = (args.length > 2 ? args[2] : "random,first,furthest,capture,safest").split(",");
+        BoardGeometry geometry = args.length > 3 ? BoardGeometry.parse(args[3]) : BoardGeometry.CLASSIC;
+        if (geometry == null) {
+            throw new IllegalArgumentException("invalid board: " + args[3]);
+        }
+        MovePicker[] pickers = new MovePicker[names.length];
+        for (int i = 0; i < names.length; i++) {
+            pickers[i] = MovePicker.byName(names[i]);
+            if (pickers[i] == null) {
+                throw new IllegalArgumentException("unknown strategy: " + names[i]);
+            }
+        }
+        Tournament tournament = new Tournament(geometry, names, pickers, seed,
+                Runtime.getRuntime().availableProcessors());
+        Terminal.printLine(tournament.run(games));
+    }
+
+    /**
+     * The combined results of the games of a tournament
+     */
+    static final class Report {
+
+        /**
+         * The z-value of the 95% confidence intervals
+         */
+        private static final double Z = 1.96;
+
+        private final String[] names;
+        private final long[] seats;
+        private final long[] wins;
+        private final long[] seatWins;
+        private long games;
+        private long unfinished;
+        private long rolls;
+        private long nanos;
+
+        /**
+         * Creates an empty report
+         * @param names the names of the strategies
+         * @param players how many players a game has
+         */
+        private Report(String[] names, int players) {
+            this.names = names;
+            seats = new long[names.length];
+            wins = new long[names.length];
+            seatWins = new long[players];
+        }
+
+        /**
+         * Adds another report's numbers to this one
+         * @param other the other report
+         */
+        private void add(Report other) {
+            for (int i = 0; i < wins.length; i++) {
+                seats[i] += other.seats[i];
+                wins[i] += other.wins[i];
+            }
+            for (int i = 0; i < seatWins.length; i++) {
+                seatWins[i] += other.seatWins[i];
+            }
+            games += other.games;
+            unfinished += other.unfinished;
+            rolls += other.rolls;
+        }
+
+        /**
+         * @return how many games have been played, finished or not
+         */
+        long getGames() {
+            return games;
+        }
+
+        /**
+         * @param entrant the index of the strategy
+         * @return how many games the strategy has won
+         */
+        long getWins(int entrant) {
+            return wins[entrant];
+        }
+
+        /**
+         * @param entrant the index of the strategy
+         * @return the share of its seats the strategy has won, a seat being one player in one game
+         */
+        double getWinRate(int entrant) {
+            return seats[entrant] == 0 ? 0 : (double) wins[entrant] / seats[entrant];
+        }
+
+        /**
+         * @param entrant the index of the strategy
+         * @return the lower end of the 95% Wilson score interval of the win rate
+         */
+        double getWinRateLow(int entrant) {
+            return wilson(wins[entrant], seats[entrant], -Z);
+        }
+
+        /**
+         * @param entrant the index of the strategy
+         * @return the upper end of the 95% Wilson score interval of the win rate
+         */
+        double getWinRateHigh(int entrant) {
+            return wilson(wins[entrant], seats[entrant], Z);
+        }
+
+        /**
+         * Works out one end of a Wilson score interval, which unlike the plain normal approximation stays inside
+         * [0, 1] and holds up for win rates close to 0 or 1
+         * @param successes how many trials were won
+         * @param trials how many trials there were
+         * @param z the z-value, negative for the lower end
+         * @return the end of the interval
+         */
+        private static double wilson(long successes, long trials, double z) {
+            if (trials == 0) {
+                return z < 0 ? 0 : 1;
+            }
+            double rate = (double) successes / trials;
+            double spread = z * z / trials;
+            return (rate + spread / 2 + z * Math.sqrt(rate * (1 - rate) / trials + spread / (4 * trials)))
+                    / (1 + spread);
+        }
+
+        /**
+         * @return how long the tournament took, in seconds
+         */
+        double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(getSeconds(), 1e-9);
+            String text = String.format(Locale.ROOT, "%d games in %.3f s: %.0f games/s, %.0f rolls/s%n",
+                    games, seconds, games / seconds, rolls / seconds);
+            for (int i = 0; i < names.length; i++) {
+                text = text.concat(String.format(Locale.ROOT,
+                        "%-10s wins %6.2f%% of %d seats, 95%% CI %.2f%% - %.2f%%%n", names[i], 100 * getWinRate(i),
+                        seats[i], 100 * getWinRateLow(i), 100 * getWinRateHigh(i)));
+            }
+            for (int i = 0; i < seatWins.length; i++) {
+                text = text.concat(String.format(Locale.ROOT, "%s seat wins %.2f%%%n", Game.getPlayerName(i),
+                        games == unfinished ? 0.0 : 100.0 * seatWins[i] / (games - unfinished)));
+            }
+            if (unfinished > 0) {
+                text = text.concat(String.format(Locale.ROOT, "%d games unfinished after %d rolls%n", unfinished,
+                        Simulator.MAX_ROLLS));
+            }
+            return text.trim();
+        }
+    }
+}
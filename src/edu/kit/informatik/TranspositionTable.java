@@ -0,0 +1,134 @@
+package edu.kit.informatik;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table that remembers what has been found out about positions, keyed by their Zobrist hash (see
+ * {@link BoardState#getHash()}), so that a search does not have to evaluate the same position over and over again.
+ * Any number of threads can read and write the table at the same time without locks. Every entry is stored as two
+ * longs, the data and the key XOR the data. A reader only accepts an entry if the two fit together, so an entry that
+ * is torn by two threads writing at once looks like a miss instead of a wrong answer.
+ * Positions are spread over buckets of two entries. The first entry of a bucket keeps the most valuable result, which
+ * is the one that has been searched deepest, unless it is left over from an earlier search. The second entry always
+ * takes whatever is stored, so that recent results are never lost entirely.
+ */
+final class TranspositionTable {
+
+    /**
+     * What {@link #probe(long)} returns if the position is not in the table. No stored entry is ever 0.
+     */
+    static final long MISS = 0;
+
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 2;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int AGE_SHIFT = 40;
+    private static final int MOVE_SHIFT = 48;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int age;
+
+    /**
+     * Creates an empty table
+     * @param megabytes roughly how much memory the table may take up, at least 1
+     */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(1, megabytes) * (1L << 20) / (LONGS_PER_ENTRY * Long.BYTES);
+        int buckets = Integer.highestOneBit((int) Math.min(entries / ENTRIES_PER_BUCKET, 1 << 26));
+        table = new long[buckets * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Marks the start of a new search. Entries from earlier searches are then replaced more readily.
+     */
+    void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * Empties the table
+     */
+    void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    /**
+     * Looks a position up
+     * @param key the Zobrist hash of the position
+     * @return the stored entry, to be taken apart with {@link #getValue(long)}, {@link #getDepth(long)} and
+     * {@link #getMove(long)}, or {@link #MISS} if the position is not in the table
+     */
+    long probe(long key) {
+        int index = bucket(key);
+        for (int i = 0; i < ENTRIES_PER_BUCKET; i++, index += LONGS_PER_ENTRY) {
+            long data = table[index + 1];
+            if ((table[index] ^ data) == key && data != MISS) {
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores what has been found out about a position
+     * @param key the Zobrist hash of the position
+     * @param depth how deep the position has been searched, between 0 and 254
+     * @param value the value of the position
+     * @param move the best move in the position, {@link Move#NONE} if there is none
+     */
+    void store(long key, int depth, float value, int move) {
+        int currentAge = age;
+        long data = (Float.floatToRawIntBits(value) & 0xFFFFFFFFL) | (long) (depth + 1) << DEPTH_SHIFT
+                | (long) currentAge << AGE_SHIFT | (move & 0xFFFFL) << MOVE_SHIFT;
+
+        int first = bucket(key);
+        int second = first + LONGS_PER_ENTRY;
+        int index;
+        long firstData = table[first + 1];
+        if ((table[first] ^ firstData) == key || (table[second] ^ table[second + 1]) != key
+                && (getDepth(firstData) <= depth || (int) (firstData >>> AGE_SHIFT & 0xFF) != currentAge)) {
+            index = first;
+        } else {
+            index = second;
+        }
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    /**
+     * @param entry an entry returned by {@link #probe(long)}
+     * @return the stored value
+     */
+    static float getValue(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    /**
+     * @param entry an entry returned by {@link #probe(long)}
+     * @return how deep the position has been searched, -1 for an empty entry
+     */
+    static int getDepth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT & 0xFF) - 1;
+    }
+
+    /**
+     * Returns the stored best move. Only the locations of the move are stored, which together with the board are
+     * enough to tell it apart from the other possible moves.
+     * @param entry an entry returned by {@link #probe(long)}
+     * @return the from and to locations of the best move, as in the lower 16 bits of an encoded move, or 0xFFFF
+     * if no move has been stored
+     */
+    static int getMove(long entry) {
+        return (int) (entry >>> MOVE_SHIFT);
+    }
+
+    /**
+     * @param key the Zobrist hash of a position
+     * @return the index of the first long of the bucket the position belongs to
+     */
+    private int bucket(long key) {
+        return ((int) (key ^ key >>> 32) & bucketMask) * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY;
+    }
+}
@@ -0,0 +1,74 @@
+package edu.kit.informatik;
+
+import java.util.SplittableRandom;
+
+/**
+ * The random keys behind the 64-bit hash of a {@link BoardState}. The hash of a board is the XOR of the key of its
+ * {@link BoardGeometry}, the keys of every peg location of every player, the key of the player who is up and, if that
+ * player gets to roll again after a 6, the key for that. Because XOR undoes itself, moving a peg only takes the keys
+ * of the two locations involved.
+ * The keys come from a fixed seed, so hashes are the same in every run of the program.
+ */
+final class Zobrist {
+
+    private static final long SEED = 0x4D454E5343484C41L;
+    private static final int LOCATIONS_PER_PLAYER = Long.SIZE;
+
+    private static final long[] PEGS = new long[BoardGeometry.MAX_PLAYERS * LOCATIONS_PER_PLAYER];
+    private static final long[] TURNS = new long[BoardGeometry.MAX_PLAYERS];
+    private static final long EXTRA_ROLL;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < PEGS.length; i++) {
+            PEGS[i] = random.nextLong();
+        }
+        for (int i = 0; i < TURNS.length; i++) {
+            TURNS[i] = random.nextLong();
+        }
+        EXTRA_ROLL = random.nextLong();
+    }
+
+    /**
+     * Private constructor, there is nothing to instantiate.
+     */
+    private Zobrist() {
+
+    }
+
+    /**
+     * @param player the player's id
+     * @param location a location code that is not {@link Peg#HOME}
+     * @return the key of a peg of that player on that location
+     */
+    static long peg(int player, int location) {
+        return PEGS[player * LOCATIONS_PER_PLAYER + location];
+    }
+
+    /**
+     * @param player the player's id
+     * @return the key of that player being up
+     */
+    static long turn(int player) {
+        return TURNS[player];
+    }
+
+    /**
+     * @return the key of the player who is up rolling again after a 6
+     */
+    static long extraRoll() {
+        return EXTRA_ROLL;
+    }
+
+    /**
+     * Works out the key of a board's shape, so that boards of different shapes with the same pegs on them get
+     * different hashes
+     * @param players how many players take part
+     * @param pathLength how many squares the track has
+     * @param pegs how many pegs each player has
+     * @return the key
+     */
+    static long geometry(int players, int pathLength, int pegs) {
+        return new SplittableRandom(SEED ^ ((long) players << 16 | pathLength << 8 | pegs)).nextLong();
+    }
+}